@@ -0,0 +1,12 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An output that can write {@link ByteBuffer}s, e.g. off-heap ones, straight to its channel
+ * without copying them into a heap array first, several at once with a gathering write. Bytes
+ * written to the stream before the call are sent first; the buffers are fully written when the
+ * call returns.
+ */
+public interface ByteBufferOutput {
+    void sendBuffers(ByteBuffer... buffers) throws IOException;
+}
@@ -0,0 +1,416 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A response stored by {@link ProxyServer}: the status line and headers as received from the web
+ * server (each line ending in CRLF, without the blank line), the body, and when it was fetched or
+ * last revalidated.
+ *
+ * A page can be cached while its body is still arriving from the web server. Readers use
+ * {@link #writeBody} which follows the fill as it progresses. Pages loaded from the
+ * {@link DiskCache} keep their body in a segment file instead, see {@link #region}.
+ *
+ * With a {@link SlabAllocator} the body lives off-heap. The page is reference counted: it starts
+ * with one reference for its creator, the cache holds one while the page is stored, and every send
+ * holds one via {@link #retain}/{@link #release}. The off-heap memory is freed at zero.
+ *
+ * Header metadata is parsed once and the response head as sent to clients (with Cache-Control
+ * added when the web server did not send one) is kept as bytes, so a hit is one gathering write.
+ *
+ * A complete body can also be sent in byte ranges ({@link #writeRangesTo}), for a client's Range
+ * request answered from the cache.
+ *
+ * The stale-while-revalidate and stale-if-error windows come from the web server's Cache-Control
+ * and are -1 when it did not send them, in which case {@link ProxyServer} uses its defaults.
+ */
+public class CachedPage {
+    // origin에서 받은 그대로 (디스크 캐시에 저장되는 형태)
+    private volatile String headers;
+    volatile long timestamp;
+    String lastModified;
+    long maxAgeMillis;
+    // headers에서 한 번만 파싱해 둔 값
+    long lastModifiedMillis;
+    long contentLength;
+    String contentType;
+    String etag;
+    // Vary: Accept-Encoding, 압축 variant마다 따로 캐시됨
+    boolean variesByEncoding;
+    int status;
+    long staleWhileRevalidateMillis;
+    long staleIfErrorMillis;
+    // 현재 유효 기간 동안의 hit 수, 만료 직전 미리 갱신할 항목을 고르는 데 씀
+    private final AtomicInteger hits = new AtomicInteger();
+    // 클라이언트에 보낼 status line + headers + 빈 줄
+    private volatile byte[] responseHead;
+    // 디스크에 있는 body, 이 경우 body와 block은 null
+    final DiskCache.Region region;
+
+    // heap body (off-heap을 못 쓰거나 길이를 모르는 채로 받는 중일 때)
+    private byte[] body;
+    private SlabAllocator.Block block;
+    private final SlabAllocator allocator;
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    // 채워진 body 길이, complete 전까지 증가
+    private int length;
+    private boolean complete;
+    private IOException failure;
+
+    CachedPage(String headers, byte[] body, String lastModified, long defaultMaxAgeMillis, SlabAllocator allocator) {
+        this.lastModified = lastModified;
+        this.timestamp = System.currentTimeMillis();
+        this.maxAgeMillis = parseDirective(headers, "max-age=", defaultMaxAgeMillis);
+        setHeaders(headers);
+        this.region = null;
+        this.allocator = allocator;
+        this.length = body.length;
+        this.complete = true;
+        this.block = allocator != null ? allocator.allocate(body.length) : null;
+        if (block != null) {
+            block.put(0, body, 0, body.length);
+        } else {
+            this.body = body;
+        }
+    }
+
+    /** A complete page whose body stays on disk. */
+    CachedPage(DiskCache.Entry entry) {
+        this.region = entry.body;
+        this.lastModified = entry.lastModified;
+        this.timestamp = entry.timestamp;
+        this.maxAgeMillis = entry.maxAgeMillis;
+        setHeaders(entry.headers);
+        this.allocator = null;
+        this.length = (int) entry.body.length;
+        this.complete = true;
+    }
+
+    /** An empty page to be filled with {@link #append}; {@code expectedLength} is -1 if unknown. */
+    CachedPage(String headers, int expectedLength, String lastModified, long defaultMaxAgeMillis,
+            SlabAllocator allocator) {
+        this.lastModified = lastModified;
+        this.timestamp = System.currentTimeMillis();
+        this.maxAgeMillis = parseDirective(headers, "max-age=", defaultMaxAgeMillis);
+        setHeaders(headers);
+        this.region = null;
+        this.allocator = allocator;
+        // 길이를 알면 off-heap에 바로 채우고, 모르면 heap에서 받은 뒤 finish()에서 옮김
+        if (expectedLength >= 0 && allocator != null)
+            this.block = allocator.allocate(expectedLength);
+        if (block == null)
+            this.body = new byte[expectedLength >= 0 ? expectedLength : 8192];
+    }
+
+    String headers() {
+        return headers;
+    }
+
+    /**
+     * Replaces the stored headers, e.g. to add the Content-Length of a chunked response once it is
+     * known, and re-derives the metadata and the response head from them.
+     */
+    void setHeaders(String headers) {
+        this.headers = headers;
+        try {
+            this.status = Integer.parseInt(headers.substring(9, 12));
+        } catch (RuntimeException e) {
+            this.status = 200;
+        }
+        this.contentType = ProxyServer.extractHeader(headers, "Content-Type");
+        this.etag = ProxyServer.extractHeader(headers, "ETag");
+        String vary = ProxyServer.extractHeader(headers, "Vary");
+        this.variesByEncoding = vary != null && vary.toLowerCase(Locale.ROOT).contains("accept-encoding");
+        String length = ProxyServer.extractHeader(headers, "Content-Length");
+        long parsedLength = -1;
+        try {
+            if (length != null)
+                parsedLength = Long.parseLong(length);
+        } catch (NumberFormatException ignored) {
+        }
+        this.contentLength = parsedLength;
+        this.lastModifiedMillis = parseHttpDate(lastModified);
+        this.staleWhileRevalidateMillis = parseDirective(headers, "stale-while-revalidate=", -1);
+        this.staleIfErrorMillis = parseDirective(headers, "stale-if-error=", -1);
+        this.responseHead = buildHead(headers, null, "");
+    }
+
+    /**
+     * The head as sent to clients. With {@code statusLine}, the stored status line and the
+     * entity headers in {@code extra} (Content-Length, Content-Range, Content-Type) are replaced.
+     */
+    private byte[] buildHead(String headers, String statusLine, String extra) {
+        StringBuilder head = new StringBuilder(headers.length() + 64 + extra.length());
+        boolean first = true;
+        for (String line : headers.split("\r\n")) {
+            if (first && statusLine != null) {
+                head.append(statusLine).append("\r\n");
+                first = false;
+                continue;
+            }
+            first = false;
+            // origin과의 연결에 대한 hop-by-hop 헤더는 클라이언트에 넘기지 않음
+            if (line.regionMatches(true, 0, "Connection:", 0, 11) || line.regionMatches(true, 0, "Keep-Alive:", 0, 11))
+                continue;
+            if (statusLine != null && (line.regionMatches(true, 0, "Content-Length:", 0, 15)
+                    || line.regionMatches(true, 0, "Content-Type:", 0, 13)))
+                continue;
+            head.append(line).append("\r\n");
+        }
+        head.append(extra);
+        if (ProxyServer.extractHeader(headers, "Cache-Control") == null)
+            head.append("Cache-Control: max-age=").append(maxAgeMillis / 1000).append("\r\n");
+        // ProxyServer는 응답마다 클라이언트 연결을 닫음
+        head.append("Connection: close\r\n\r\n");
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** True if the whole body is here, so ranges of it can be sent without waiting. */
+    synchronized boolean canServeRanges() {
+        return status == 200 && complete && failure == null;
+    }
+
+    /**
+     * Writes a 206 response with {@code ranges} of the complete body, or 416 if the list is empty,
+     * and returns the status. The caller must hold a reference and have checked
+     * {@link #canServeRanges}.
+     */
+    int writeRangesTo(OutputStream out, List<HttpRange> ranges) throws IOException {
+        long size = bodyLength();
+        if (ranges.isEmpty()) {
+            out.write(HttpRange.notSatisfiable(size, "Connection: close\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            return 416;
+        }
+        HttpRange single = ranges.size() == 1 ? ranges.get(0) : null;
+        String extra = single != null
+                ? (contentType != null ? "Content-Type: " + contentType + "\r\n" : "") +
+                        "Content-Range: " + single.contentRange(size) + "\r\n" +
+                        "Content-Length: " + single.length() + "\r\n"
+                : "Content-Type: multipart/byteranges; boundary=" + HttpRange.BOUNDARY + "\r\n" +
+                        "Content-Length: " + HttpRange.multipartLength(ranges, size, contentType) + "\r\n";
+        out.write(buildHead(headers, "HTTP/1.1 206 Partial Content", extra));
+        if (single != null) {
+            writeBodyRange(out, single.first, single.length());
+        } else {
+            HttpRange.writeMultipart(out, ranges, size, contentType,
+                    (position, count) -> writeBodyRange(out, position, count));
+        }
+        return 206;
+    }
+
+    private void writeBodyRange(OutputStream out, long position, long count) throws IOException {
+        if (region != null) {
+            region.writeTo(out, position, count);
+            return;
+        }
+        ByteBuffer body = bodyBuffer();
+        body.position((int) position).limit((int) (position + count));
+        writeBuffer(out, body.slice());
+    }
+
+    synchronized void append(byte[] buf, int off, int len) {
+        if (block != null) {
+            block.put(length, buf, off, len);
+        } else {
+            if (length + len > body.length)
+                body = Arrays.copyOf(body, Math.max(body.length * 2, length + len));
+            System.arraycopy(buf, off, body, length, len);
+        }
+        length += len;
+        notifyAll();
+    }
+
+    synchronized void finish() {
+        if (block == null && allocator != null && refs.get() > 0)
+            block = allocator.allocate(length);
+        if (block != null && body != null) {
+            block.put(0, body, 0, length);
+            body = null;
+        } else if (body != null && length != body.length) {
+            body = Arrays.copyOf(body, length);
+        }
+        complete = true;
+        notifyAll();
+    }
+
+    synchronized void fail(IOException e) {
+        failure = e;
+        notifyAll();
+    }
+
+    synchronized int filledLength() {
+        return length;
+    }
+
+    synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /** Takes a reference for reading the body; false if the page was already released for good. */
+    boolean retain() {
+        int n;
+        do {
+            n = refs.get();
+            if (n <= 0)
+                return false;
+        } while (!refs.compareAndSet(n, n + 1));
+        return true;
+    }
+
+    void release() {
+        int n = refs.decrementAndGet();
+        if (n == 0) {
+            synchronized (this) {
+                if (block != null) {
+                    block.free();
+                    block = null;
+                }
+                body = null;
+            }
+        } else if (n < 0) {
+            throw new IllegalStateException("CachedPage released more often than retained");
+        }
+    }
+
+    /**
+     * Writes the response head and the body. A complete in-memory body goes out together with the
+     * head in one gathering write when {@code out} supports it. The caller must hold a reference.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        byte[] head = responseHead;
+        if (out instanceof ByteBufferOutput) {
+            ByteBuffer body = completeBody();
+            if (body != null) {
+                ((ByteBufferOutput) out).sendBuffers(ByteBuffer.wrap(head), body);
+                return;
+            }
+        }
+        out.write(head);
+        writeBody(out);
+    }
+
+    private synchronized ByteBuffer completeBody() {
+        if (region != null || !complete || failure != null)
+            return null;
+        return bodyBuffer();
+    }
+
+    /**
+     * Writes the body to {@code out}, waiting for bytes that have not arrived from the web server
+     * yet. Throws if the fill fails part way. The caller must hold a reference.
+     */
+    void writeBody(OutputStream out) throws IOException {
+        if (region != null) {
+            region.writeTo(out);
+            return;
+        }
+        int pos = 0;
+        while (true) {
+            byte[] chunk;
+            SlabAllocator.Block offHeap;
+            int end;
+            synchronized (this) {
+                while (pos == length && !complete && failure == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for body", e);
+                    }
+                }
+                if (failure != null)
+                    throw new IOException("Origin fetch failed: " + failure.getMessage(), failure);
+                if (pos == length && complete)
+                    return;
+                chunk = body;
+                offHeap = block;
+                end = length;
+            }
+            if (offHeap != null) {
+                writeBuffer(out, offHeap.slice(pos, end));
+            } else {
+                out.write(chunk, pos, end - pos);
+            }
+            pos = end;
+        }
+    }
+
+    private static void writeBuffer(OutputStream out, ByteBuffer buffer) throws IOException {
+        if (out instanceof ByteBufferOutput) {
+            ((ByteBufferOutput) out).sendBuffers(buffer);
+            return;
+        }
+        byte[] copy = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            int n = Math.min(copy.length, buffer.remaining());
+            buffer.get(copy, 0, n);
+            out.write(copy, 0, n);
+        }
+    }
+
+    /** The complete body as a read-only buffer; the caller must hold a reference. */
+    synchronized ByteBuffer bodyBuffer() {
+        if (block != null)
+            return block.slice(0, length);
+        return ByteBuffer.wrap(body, 0, length).asReadOnlyBuffer();
+    }
+
+    boolean isFresh(long now) {
+        return now - timestamp < maxAgeMillis;
+    }
+
+    /** True while {@code now} is less than {@code windowMillis} past max-age. */
+    boolean isWithinStaleWindow(long now, long windowMillis) {
+        return now - timestamp < maxAgeMillis + windowMillis;
+    }
+
+    /** Counts a hit in the current freshness period and returns the count so far. */
+    int recordHit() {
+        return hits.incrementAndGet();
+    }
+
+    /** Marks the start of a new freshness period, after a 304 from the web server. */
+    void revalidated(long now) {
+        timestamp = now;
+        hits.set(0);
+    }
+
+    long bodyLength() {
+        return region != null ? region.length : contentLength >= 0 ? contentLength : filledLength();
+    }
+
+    /** Approximate memory used by this entry, heap or off-heap, for the cache's byte budget. */
+    long size() {
+        return (region != null ? 0 : bodyLength()) + headers.length();
+    }
+
+    private static long parseHttpDate(String date) {
+        long seconds = HttpDate.parse(date);
+        return seconds < 0 ? -1 : seconds * 1000;
+    }
+
+    /** The value of a Cache-Control directive such as {@code "max-age="} in milliseconds. */
+    private static long parseDirective(String headers, String name, long defaultMillis) {
+        String cacheControl = ProxyServer.extractHeader(headers, "Cache-Control");
+        if (cacheControl != null && cacheControl.contains(name)) {
+            String[] directives = cacheControl.split(",");
+            for (String directive : directives) {
+                directive = directive.trim();
+                if (directive.startsWith(name)) {
+                    try {
+                        return Long.parseLong(directive.substring(name.length())) * 1000;
+                    } catch (NumberFormatException e) {
+                        return defaultMillis;
+                    }
+                }
+            }
+        }
+        return defaultMillis;
+    }
+}
@@ -0,0 +1,77 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered stream over a blocking channel. File bodies are handed to the kernel with
+ * {@link FileChannel#transferTo} (sendfile on Linux) instead of being copied through the buffer,
+ * and direct buffers are written to the channel as they are.
+ */
+public class ChannelOutputStream extends BufferedOutputStream implements FileRegionOutput, ByteBufferOutput {
+    private final WritableByteChannel channel;
+    // access log용, 이 stream으로 보낸 전체 byte 수
+    private long written = 0;
+
+    public ChannelOutputStream(WritableByteChannel channel) {
+        super(Channels.newOutputStream(channel), 8192);
+        this.channel = channel;
+    }
+
+    /** Bytes written so far, buffered or not. */
+    public long bytesWritten() {
+        return written;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        super.write(b);
+        written++;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        written += len;
+    }
+
+    @Override
+    public void sendBuffers(ByteBuffer... buffers) throws IOException {
+        flush();
+        if (channel instanceof GatheringByteChannel) {
+            // 헤더와 body를 writev 한 번으로
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers)
+                remaining += buffer.remaining();
+            written += remaining;
+            while (remaining > 0)
+                remaining -= ((GatheringByteChannel) channel).write(buffers);
+            return;
+        }
+        for (ByteBuffer buffer : buffers) {
+            written += buffer.remaining();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void sendFile(Path file, long position, long count) throws IOException {
+        flush();
+        written += count;
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = position + count;
+            while (position < end) {
+                long n = fileChannel.transferTo(position, end - position, channel);
+                if (n <= 0 && position >= fileChannel.size())
+                    throw new IOException("File truncated while sending: " + file);
+                position += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip/deflate content coding: choosing one from a request's Accept-Encoding and compressing a
+ * body with it. Bodies are compressed once and cached by the callers ({@link ResponseCache} pages,
+ * {@link PrecompressedFiles}), so the highest compression level is used.
+ */
+public final class ContentEncoding {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    // 이보다 작은 body는 압축해도 헤더 하나 크기만큼도 줄지 않음
+    static final int MIN_LENGTH = 256;
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * The coding to answer with for {@code acceptEncoding}: gzip or deflate, whichever has the
+     * higher q-value (gzip on a tie), or null for the identity coding. A coding with q=0 is refused.
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return null;
+        double gzip = -1, deflate = -1, any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            int semicolon = part.indexOf(';');
+            String coding = (semicolon < 0 ? part : part.substring(0, semicolon)).trim();
+            double q = semicolon < 0 ? 1 : qValue(part.substring(semicolon + 1));
+            if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip"))
+                gzip = Math.max(gzip, q);
+            else if (coding.equalsIgnoreCase(DEFLATE))
+                deflate = Math.max(deflate, q);
+            else if (coding.equals("*"))
+                any = q;
+        }
+        // 목록에 없는 coding은 *의 q를 따름
+        if (gzip < 0)
+            gzip = any;
+        if (deflate < 0)
+            deflate = any;
+        if (gzip <= 0 && deflate <= 0)
+            return null;
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    private static double qValue(String params) {
+        for (String param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /** True for the text types worth compressing; images are already compressed. */
+    public static boolean isCompressible(String contentType) {
+        return contentType != null && (contentType.startsWith("text/") || contentType.startsWith("application/json")
+                || contentType.startsWith("application/javascript") || contentType.startsWith("image/svg"));
+    }
+
+    public static byte[] encode(byte[] body, String encoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 3 + 64);
+        if (encoding.equals(GZIP)) {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }) {
+                gzip.write(body);
+            }
+        } else {
+            // HTTP의 deflate는 zlib 형식 (raw deflate가 아님)
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+                deflate.write(body);
+            } finally {
+                deflater.end();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** The ETag of the {@code encoding} variant: a different representation needs a different tag. */
+    public static String etag(String etag, String encoding) {
+        if (etag == null || encoding == null)
+            return etag;
+        return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+    }
+}
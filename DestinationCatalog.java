@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Immutable, indexed view of destinations.json. Lookups by slug ("Swiss-Alps"), name and type are
+ * hash lookups; names and slugs are matched case-insensitively like the old linear scan did.
+ * Use {@link Reloading} to pick up changes to the file at runtime.
+ */
+public class DestinationCatalog {
+
+    public static class Destination {
+        public final String name;
+        public final String slug;
+        public final String type;
+        public final String description;
+        public final String image;
+
+        Destination(String name, String type, String description, String image) {
+            this.name = name;
+            this.slug = name.replace(" ", "-");
+            this.type = type;
+            this.description = description;
+            this.image = image;
+        }
+    }
+
+    private final List<Destination> all;
+    private final Map<String, Destination> bySlug = new HashMap<>();
+    private final Map<String, Destination> byName = new HashMap<>();
+    private final Map<String, List<Destination>> byType = new HashMap<>();
+    private final long modifiedTime;
+
+    private DestinationCatalog(List<Destination> destinations, long modifiedTime) {
+        this.all = Collections.unmodifiableList(destinations);
+        this.modifiedTime = modifiedTime;
+        Map<String, List<Destination>> types = new LinkedHashMap<>();
+        for (Destination d : destinations) {
+            // 이름이 겹치면 json에서 먼저 나온 항목 사용
+            bySlug.putIfAbsent(d.slug.toLowerCase(Locale.ROOT), d);
+            byName.putIfAbsent(d.name.toLowerCase(Locale.ROOT), d);
+            types.computeIfAbsent(d.type.toLowerCase(Locale.ROOT), t -> new ArrayList<>()).add(d);
+        }
+        for (Map.Entry<String, List<Destination>> e : types.entrySet()) {
+            byType.put(e.getKey(), Collections.unmodifiableList(e.getValue()));
+        }
+    }
+
+    public static DestinationCatalog load(Path file) throws IOException {
+        long modifiedTime = Files.getLastModifiedTime(file).toMillis();
+        String str = new String(Files.readAllBytes(file));
+        JsonObject root = JsonParser.parseString(str).getAsJsonObject();
+        List<Destination> destinations = new ArrayList<>();
+        for (JsonElement element : root.getAsJsonArray("destinations")) {
+            JsonObject destObject = element.getAsJsonObject();
+            destinations.add(new Destination(
+                    destObject.get("name").getAsString(),
+                    destObject.get("type").getAsString(),
+                    destObject.get("description").getAsString(),
+                    destObject.get("image").getAsString().replace("//", "/")));
+        }
+        return new DestinationCatalog(destinations, modifiedTime);
+    }
+
+    public Destination bySlug(String slug) {
+        return bySlug.get(slug.toLowerCase(Locale.ROOT));
+    }
+
+    public Destination byName(String name) {
+        return byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /** Destinations of the given type in file order, or an empty list. */
+    public List<Destination> byType(String type) {
+        return byType.getOrDefault(type.toLowerCase(Locale.ROOT), Collections.emptyList());
+    }
+
+    public boolean hasType(String type) {
+        return byType.containsKey(type.toLowerCase(Locale.ROOT));
+    }
+
+    public Set<String> types() {
+        return Collections.unmodifiableSet(byType.keySet());
+    }
+
+    public List<Destination> all() {
+        return all;
+    }
+
+    /**
+     * Holds the current catalog and swaps in a freshly built one when the file's modification time
+     * changes. Readers never see a partially loaded catalog; if the new file fails to parse the old
+     * catalog stays in use.
+     */
+    public static class Reloading {
+        private final Path file;
+        private final long checkIntervalMillis;
+        private volatile DestinationCatalog current;
+        private volatile long lastCheck;
+
+        public Reloading(Path file, long checkIntervalMillis) throws IOException {
+            this.file = file;
+            this.checkIntervalMillis = checkIntervalMillis;
+            this.current = load(file);
+            this.lastCheck = System.currentTimeMillis();
+        }
+
+        public DestinationCatalog get() {
+            if (System.currentTimeMillis() - lastCheck > checkIntervalMillis)
+                refresh();
+            return current;
+        }
+
+        /** Reloads now if the file changed since the current catalog was built. */
+        public synchronized void refresh() {
+            lastCheck = System.currentTimeMillis();
+            try {
+                if (Files.getLastModifiedTime(file).toMillis() != current.modifiedTime) {
+                    current = load(file);
+                    Log.info("Reloaded {} ({} destinations)", file, current.all.size());
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Error reloading {}: {}", file, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Second cache tier for {@link ProxyServer}, kept on disk so the proxy comes back warm after a
+ * restart. Pages are appended to segment files ("segment-000001.dat", ...) and never rewritten;
+ * an in-memory index maps each URL to its latest record. When the total size goes over
+ * {@code maxBytes} the oldest segment is deleted as a whole, and the drop listener is told so
+ * the memory tier stops serving bodies from it.
+ *
+ * Bodies are written outside the monitor so lookups do not wait for a multi-MB write: writers
+ * take {@link #writeLock} in turn, and only reserving the offset and publishing the index entry
+ * happen under the monitor.
+ *
+ * Record layout: magic, URL, headers, Last-Modified (length -1 if none), timestamp, max-age,
+ * body length, body. At startup the index is rebuilt by reading only the record headers and
+ * seeking over the bodies.
+ */
+public class DiskCache {
+    private static final int MAGIC = 0x50584331; // "PXC1"
+    private static final long TOMBSTONE = -1;
+
+    /** Where a body lives on disk. */
+    public static class Region {
+        final Path file;
+        final long offset;
+        final long length;
+
+        Region(Path file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /** Sends the body with transferTo when {@code out} supports it, otherwise through a mapping. */
+        void writeTo(OutputStream out) throws IOException {
+            writeTo(out, 0, length);
+        }
+
+        /** Sends {@code count} bytes of the body starting at {@code position} within it. */
+        void writeTo(OutputStream out, long position, long count) throws IOException {
+            if (out instanceof FileRegionOutput) {
+                ((FileRegionOutput) out).sendFile(file, offset + position, count);
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset + position, count);
+                byte[] buffer = new byte[8192];
+                while (mapped.hasRemaining()) {
+                    int n = Math.min(buffer.length, mapped.remaining());
+                    mapped.get(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+            }
+        }
+
+        byte[] read() throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                byte[] body = new byte[(int) length];
+                mapped.get(body);
+                return body;
+            }
+        }
+    }
+
+    /** Index entry: everything but the body, which stays in the segment. */
+    public static class Entry {
+        final String headers;
+        final String lastModified;
+        final long timestamp;
+        final long maxAgeMillis;
+        final Region body;
+        final int segment;
+
+        Entry(String headers, String lastModified, long timestamp, long maxAgeMillis, Region body, int segment) {
+            this.headers = headers;
+            this.lastModified = lastModified;
+            this.timestamp = timestamp;
+            this.maxAgeMillis = maxAgeMillis;
+            this.body = body;
+            this.segment = segment;
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final long staleRetentionMillis;
+
+    private final Map<String, Entry> index = new HashMap<>();
+    // segment 번호 -> 파일 크기, 오래된 것부터
+    private final TreeMap<Integer, Long> segments = new TreeMap<>();
+    private long totalBytes = 0;
+    private int currentSegment;
+    private FileChannel writer;
+    // writer는 한 번에 하나만, index는 monitor로 보호
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Consumer<Path> dropListener;
+
+    private DiskCache(Path dir, long maxBytes, long segmentBytes, long staleRetentionMillis) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        this.staleRetentionMillis = staleRetentionMillis;
+    }
+
+    public static DiskCache open(Path dir, long maxBytes, long staleRetentionMillis) throws IOException {
+        DiskCache cache = new DiskCache(dir, maxBytes, Math.max(Math.min(64L * 1024 * 1024, maxBytes / 8), 1024 * 1024),
+                staleRetentionMillis);
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        List<Integer> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith("segment-") && n.endsWith(".dat"))
+                    .forEach(n -> {
+                        try {
+                            found.add(Integer.parseInt(n.substring(8, n.length() - 4)));
+                        } catch (NumberFormatException e) {
+                            Log.warn("[DiskCache] Ignoring {}", dir.resolve(n));
+                        }
+                    });
+        }
+        Collections.sort(found);
+        for (int segment : found) {
+            cache.scan(segment);
+        }
+        // 마지막 segment에 이어서 씀, 가득 차면 put()에서 다음 segment로 넘어감
+        cache.currentSegment = found.isEmpty() ? 1 : found.get(found.size() - 1);
+        cache.openWriter();
+        Log.info("[DiskCache] Indexed {} segments in {} ms ({})", found.size(), (System.nanoTime() - start) / 1_000_000,
+                cache);
+        return cache;
+    }
+
+    private Path segmentPath(int segment) {
+        return dir.resolve(String.format("segment-%06d.dat", segment));
+    }
+
+    /** Adds the records of one segment to the index; a torn record at the end is cut off. */
+    private void scan(int segment) throws IOException {
+        Path file = segmentPath(segment);
+        long fileSize = Files.size(file);
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 16384))) {
+            while (offset < fileSize) {
+                long recordStart = offset;
+                try {
+                    if (in.readInt() != MAGIC)
+                        break;
+                    byte[] url = readBytes(in);
+                    byte[] headers = readBytes(in);
+                    byte[] lastModified = readBytes(in);
+                    long timestamp = in.readLong();
+                    long maxAge = in.readLong();
+                    long bodyLength = in.readLong();
+                    if (url == null || headers == null)
+                        throw new IllegalArgumentException("Record without URL or headers");
+                    offset += 4 + 4 + url.length + 4 + headers.length + 4 + (lastModified == null ? 0 : lastModified.length)
+                            + 8 + 8 + 8;
+                    if (bodyLength > 0) {
+                        if (offset + bodyLength > fileSize)
+                            throw new EOFException();
+                        in.skipNBytes(bodyLength);
+                    }
+                    String key = new String(url, StandardCharsets.UTF_8);
+                    if (bodyLength == TOMBSTONE) {
+                        index.remove(key);
+                    } else {
+                        index.put(key, new Entry(new String(headers, StandardCharsets.ISO_8859_1),
+                                lastModified == null ? null : new String(lastModified, StandardCharsets.ISO_8859_1),
+                                timestamp, maxAge, new Region(file, offset, bodyLength), segment));
+                        offset += bodyLength;
+                    }
+                } catch (EOFException | IllegalArgumentException e) {
+                    offset = recordStart;
+                    break;
+                }
+            }
+        }
+        if (offset < fileSize) {
+            Log.warn("[DiskCache] Truncating {} at {} (torn record)", file, offset);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+        }
+        segments.put(segment, offset);
+        totalBytes += offset;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1)
+            return null;
+        if (length < 0 || length > 16 * 1024 * 1024)
+            throw new IllegalArgumentException("Bad field length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private void openWriter() throws IOException {
+        writer = FileChannel.open(segmentPath(currentSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segments.putIfAbsent(currentSegment, writer.size());
+    }
+
+    /** Returns the entry for {@code url} unless it is past max-age plus the stale retention. */
+    public synchronized Entry get(String url) {
+        Entry entry = index.get(url);
+        if (entry != null && System.currentTimeMillis() - entry.timestamp >= entry.maxAgeMillis + staleRetentionMillis) {
+            index.remove(url);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Called outside the locks with the file of each segment deleted to stay under
+     * {@code maxBytes}; bodies in it can no longer be read.
+     */
+    public void setDropListener(Consumer<Path> listener) {
+        this.dropListener = listener;
+    }
+
+    /**
+     * Appends a complete page and returns its index entry, or null if it could not be
+     * stored.
+     */
+    public Entry put(String url, String headers, String lastModified, long timestamp,
+            long maxAgeMillis, ByteBuffer body) {
+        List<Path> dropped = new ArrayList<>();
+        writeLock.lock();
+        try {
+            int bodyLength = body.remaining();
+            byte[] header = recordHeader(url, headers, lastModified, timestamp, maxAgeMillis, bodyLength);
+            long recordSize = header.length + bodyLength;
+            if (recordSize > maxBytes)
+                return null;
+            int segment;
+            long offset;
+            FileChannel channel;
+            synchronized (this) {
+                long segmentSize = segments.get(currentSegment);
+                if (segmentSize > 0 && segmentSize + recordSize > segmentBytes)
+                    rollSegment();
+                segment = currentSegment;
+                offset = segments.get(segment);
+                channel = writer;
+            }
+            // off-heap body도 heap으로 복사하지 않고 그대로 씀
+            ByteBuffer[] record = { ByteBuffer.wrap(header), body };
+            long remaining = recordSize;
+            while (remaining > 0) {
+                remaining -= channel.write(record);
+            }
+            Region region = new Region(segmentPath(segment), offset + header.length, bodyLength);
+            Entry entry = new Entry(headers, lastModified, timestamp, maxAgeMillis, region, segment);
+            synchronized (this) {
+                segments.put(segment, offset + recordSize);
+                totalBytes += recordSize;
+                index.put(url, entry);
+                while (totalBytes > maxBytes && segments.size() > 1)
+                    dropped.add(dropOldestSegment());
+            }
+            return entry;
+        } catch (IOException e) {
+            Log.warn("[DiskCache] Failed to write {}: {}", url, e.getMessage());
+            return null;
+        } finally {
+            writeLock.unlock();
+            notifyDropped(dropped);
+        }
+    }
+
+    /** Records that {@code url} should no longer be served from disk, also after a restart. */
+    public void invalidate(String url) {
+        writeLock.lock();
+        try {
+            FileChannel channel;
+            int segment;
+            synchronized (this) {
+                if (index.remove(url) == null)
+                    return;
+                channel = writer;
+                segment = currentSegment;
+            }
+            byte[] header = recordHeader(url, "", null, 0, 0, TOMBSTONE);
+            ByteBuffer buf = ByteBuffer.wrap(header);
+            while (buf.hasRemaining())
+                channel.write(buf);
+            synchronized (this) {
+                segments.merge(segment, (long) header.length, Long::sum);
+                totalBytes += header.length;
+            }
+        } catch (IOException e) {
+            Log.warn("[DiskCache] Failed to invalidate {}: {}", url, e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static byte[] recordHeader(String url, String headers, String lastModified, long timestamp,
+            long maxAgeMillis, long bodyLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + headers.length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        writeBytes(out, url.getBytes(StandardCharsets.UTF_8));
+        writeBytes(out, headers.getBytes(StandardCharsets.ISO_8859_1));
+        writeBytes(out, lastModified == null ? null : lastModified.getBytes(StandardCharsets.ISO_8859_1));
+        out.writeLong(timestamp);
+        out.writeLong(maxAgeMillis);
+        out.writeLong(bodyLength);
+        return bytes.toByteArray();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        writer.close();
+        currentSegment++;
+        openWriter();
+    }
+
+    /** Deletes the oldest segment and returns its file; the caller notifies the drop listener. */
+    private Path dropOldestSegment() throws IOException {
+        Map.Entry<Integer, Long> oldest = segments.pollFirstEntry();
+        totalBytes -= oldest.getValue();
+        int segment = oldest.getKey();
+        index.values().removeIf(e -> e.segment == segment);
+        // 이미 파일을 연 전송은 끝까지 읽을 수 있지만, 이 segment를 가리키는 메모리 캐시 항목은
+        // listener가 지워야 이후 요청이 없는 파일을 열지 않음
+        Path file = segmentPath(segment);
+        Files.deleteIfExists(file);
+        return file;
+    }
+
+    private void notifyDropped(List<Path> dropped) {
+        Consumer<Path> listener = dropListener;
+        if (listener == null)
+            return;
+        for (Path file : dropped)
+            listener.accept(file);
+    }
+
+    public synchronized int entryCount() {
+        return index.size();
+    }
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "diskEntries=" + entryCount() + " diskBytes=" + totalBytes();
+    }
+}
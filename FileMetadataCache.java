@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Modification time and length of the files {@link WebServer} serves, with the Last-Modified and
+ * ETag header values derived from them, so a response does not stat the file or format a date.
+ * An entry is re-read once it is older than {@code ttlMillis}, like {@link ResponseCache} checks
+ * its sources; a changed file is therefore noticed within that time. Missing files are cached too,
+ * so repeated 404s do not hit the file system either. At most {@link #MAX_ENTRIES} files are kept,
+ * the least recently used going first, like {@link ProxyCache}.
+ */
+public class FileMetadataCache {
+    private static final int MAX_ENTRIES = 4096;
+
+    /** Metadata of a regular file as of {@link #checkedAt}; {@code path} is null for a missing file. */
+    public static class Metadata {
+        final Path path;
+        final long lastModifiedMillis;
+        final long length;
+        // Last-Modified 값 (초 단위로 잘림)과 비교용 epoch seconds
+        final String lastModified;
+        final long lastModifiedSeconds;
+        final String etag;
+        final long checkedAt;
+
+        Metadata(Path path, long lastModifiedMillis, long length, long checkedAt) {
+            this.path = path;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.length = length;
+            this.lastModified = path != null ? HttpDate.format(lastModifiedMillis) : null;
+            this.lastModifiedSeconds = Math.floorDiv(lastModifiedMillis, 1000);
+            this.etag = path != null ? etag(lastModifiedMillis, length) : null;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    // accessOrder=true: 가장 오래 안 쓴 항목이 앞쪽, 파일 이름은 요청 경로에서 오므로 항목 수를 제한
+    private final Map<String, Metadata> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Metadata> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long ttlMillis;
+
+    public FileMetadataCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /** The metadata of {@code file}, or null if it does not exist or is not a regular file. */
+    public Metadata get(String file) {
+        long now = System.currentTimeMillis();
+        Metadata m;
+        lock.lock();
+        try {
+            m = entries.get(file);
+        } finally {
+            lock.unlock();
+        }
+        if (m == null || now - m.checkedAt > ttlMillis) {
+            // stat은 lock 밖에서
+            m = read(file, now);
+            lock.lock();
+            try {
+                entries.put(file, m);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return m.path != null ? m : null;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Metadata read(String file, long now) {
+        try {
+            Path path = Paths.get(file);
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isRegularFile())
+                return new Metadata(null, -1, -1, now);
+            return new Metadata(path, attrs.lastModifiedTime().toMillis(), attrs.size(), now);
+        } catch (IOException | RuntimeException e) {
+            // 없는 파일, 잘못된 경로
+            return new Metadata(null, -1, -1, now);
+        }
+    }
+
+    /** A strong validator from mtime and length, the same for the file until either changes. */
+    static String etag(long modifiedMillis, long length) {
+        return "\"" + Long.toHexString(modifiedMillis) + "-" + Long.toHexString(length) + "\"";
+    }
+}
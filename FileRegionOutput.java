@@ -0,0 +1,11 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * An output that can send a region of a file without copying it through a user-space buffer,
+ * e.g. with {@link java.nio.channels.FileChannel#transferTo}. Bytes written to the stream before
+ * the call are sent first.
+ */
+public interface FileRegionOutput {
+    void sendFile(Path file, long position, long count) throws IOException;
+}
@@ -0,0 +1,110 @@
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * HTTP dates (RFC 7231 IMF-fixdate, "Sun, 06 Nov 1994 08:49:37 GMT") as epoch seconds. Stateless
+ * and thread-safe, unlike the SimpleDateFormat it replaces. The fixed format that clients echo
+ * back in If-Modified-Since is parsed by position without allocating; anything else goes through
+ * java.time's RFC 1123 parser.
+ */
+public final class HttpDate {
+    private static final String[] DAYS = { "Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed" };
+    private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct",
+            "Nov", "Dec" };
+
+    private HttpDate() {
+    }
+
+    /** Formats {@code epochMillis} (truncated to the second) as an IMF-fixdate. */
+    public static String format(long epochMillis) {
+        long seconds = Math.floorDiv(epochMillis, 1000);
+        long days = Math.floorDiv(seconds, 86400);
+        int secondOfDay = Math.floorMod(seconds, 86400);
+        // days since 1970-01-01 -> 연/월/일 (Howard Hinnant의 civil_from_days)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder s = new StringBuilder(29);
+        s.append(DAYS[Math.floorMod(days, 7)]).append(", ");
+        pad2(s, day).append(' ').append(MONTHS[month - 1]).append(' ').append(year).append(' ');
+        pad2(s, secondOfDay / 3600).append(':');
+        pad2(s, secondOfDay / 60 % 60).append(':');
+        pad2(s, secondOfDay % 60).append(" GMT");
+        return s.toString();
+    }
+
+    /** Epoch seconds of an HTTP date, or -1 if {@code date} is null or not a valid date. */
+    public static long parse(String date) {
+        if (date == null)
+            return -1;
+        long fixed = parseFixdate(date);
+        if (fixed != -1)
+            return fixed;
+        try {
+            return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    // "Sun, 06 Nov 1994 08:49:37 GMT"
+    private static long parseFixdate(String s) {
+        if (s.length() != 29 || s.charAt(3) != ',' || s.charAt(4) != ' ' || s.charAt(7) != ' ' || s.charAt(11) != ' '
+                || s.charAt(16) != ' ' || s.charAt(19) != ':' || s.charAt(22) != ':' || !s.endsWith(" GMT"))
+            return -1;
+        int day = digits(s, 5, 2);
+        int month = month(s);
+        int year = digits(s, 12, 4);
+        int hour = digits(s, 17, 2);
+        int minute = digits(s, 20, 2);
+        int second = digits(s, 23, 2);
+        // digits()는 숫자가 아니면 -1
+        if (day < 1 || day > 31 || month < 1 || year < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 60)
+            return -1;
+        return daysFromCivil(year, month, day) * 86400 + hour * 3600 + minute * 60 + second;
+    }
+
+    private static int month(String s) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (s.regionMatches(8, MONTHS[i], 0, 3))
+                return i + 1;
+        }
+        return -1;
+    }
+
+    private static int digits(String s, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /** Days since 1970-01-01 (Howard Hinnant's days_from_civil). */
+    private static long daysFromCivil(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long yoe = year - era * 400;
+        long doy = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static StringBuilder pad2(StringBuilder s, int value) {
+        if (value < 10)
+            s.append('0');
+        return s.append(value);
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A byte range of a representation as requested with {@code Range: bytes=...} (RFC 7233), with
+ * the If-Range check and the multipart/byteranges layout used when more than one range is asked
+ * for. {@link WebServer} serves the ranges from the file, {@link ProxyServer} from a complete
+ * cached body; both write the range bodies through {@link Body}.
+ */
+public final class HttpRange {
+    // 이보다 많은 range나 겹치는 range는 무시하고 전체를 보냄 (작은 range 수천 개로 부풀리는 요청 방지)
+    static final int MAX_RANGES = 16;
+    static final String BOUNDARY = "RANGE_" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    /** First and last byte position, both inclusive. */
+    final long first;
+    final long last;
+
+    HttpRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    long length() {
+        return last - first + 1;
+    }
+
+    /** The Content-Range value, e.g. {@code bytes 0-499/1234}. */
+    String contentRange(long size) {
+        return "bytes " + first + "-" + last + "/" + size;
+    }
+
+    /** Writes {@code count} bytes of the body starting at {@code position}. */
+    interface Body {
+        void write(long position, long count) throws IOException;
+    }
+
+    /**
+     * The ranges to send for a request, or null to send the whole body with 200: no Range header,
+     * an If-Range that does not match the current {@code etag} / {@code lastModifiedSeconds}, or a
+     * Range header that is ignored. An empty list means none of the ranges can be satisfied (416).
+     */
+    static List<HttpRange> requested(Map<String, String> headers, long size, String etag, long lastModifiedSeconds) {
+        String range = headers.get("Range");
+        if (range == null)
+            return null;
+        String ifRange = headers.get("If-Range");
+        if (ifRange != null && !ifRangeMatches(ifRange, etag, lastModifiedSeconds))
+            return null;
+        return parse(range, size);
+    }
+
+    /**
+     * If-Range holds either an entity tag, compared strongly, or a date that must equal the
+     * Last-Modified date exactly.
+     */
+    static boolean ifRangeMatches(String ifRange, String etag, long lastModifiedSeconds) {
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return etag != null && !etag.startsWith("W/") && ifRange.equals(etag);
+        long date = HttpDate.parse(ifRange);
+        return date >= 0 && date == lastModifiedSeconds;
+    }
+
+    /**
+     * Parses a {@code bytes=} range set against a body of {@code size} bytes. Returns null if the
+     * header is malformed, not in bytes, has more than {@link #MAX_RANGES} ranges or overlapping
+     * ones; those requests get the full body. Ranges starting past the end are dropped.
+     */
+    static List<HttpRange> parse(String header, long size) {
+        header = header.trim();
+        if (!header.regionMatches(true, 0, "bytes=", 0, 6))
+            return null;
+        List<HttpRange> ranges = new ArrayList<>(1);
+        int count = 0;
+        long total = 0;
+        for (String spec : header.substring(6).split(",")) {
+            spec = spec.trim();
+            if (spec.isEmpty())
+                continue;
+            if (++count > MAX_RANGES)
+                return null;
+            int dash = spec.indexOf('-');
+            if (dash < 0)
+                return null;
+            long first, last;
+            try {
+                if (dash == 0) {
+                    // bytes=-500: 마지막 500 bytes
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0)
+                        return null;
+                    if (suffix == 0 || size == 0)
+                        continue;
+                    first = Math.max(0, size - suffix);
+                    last = size - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    // bytes=500-: 끝까지
+                    last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                    if (first < 0 || last < first)
+                        return null;
+                    if (first >= size)
+                        continue;
+                    last = Math.min(last, size - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            ranges.add(new HttpRange(first, last));
+            total += last - first + 1;
+        }
+        if (count == 0)
+            return null;
+        // 겹치는 range가 있으면 합이 전체보다 커질 수 있음
+        if (total > size || overlap(ranges))
+            return null;
+        return ranges;
+    }
+
+    private static boolean overlap(List<HttpRange> ranges) {
+        for (int i = 0; i < ranges.size(); i++) {
+            for (int j = i + 1; j < ranges.size(); j++) {
+                HttpRange a = ranges.get(i), b = ranges.get(j);
+                if (a.first <= b.last && b.first <= a.last)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /** Content-Length of the multipart/byteranges body {@link #writeMultipart} writes. */
+    static long multipartLength(List<HttpRange> ranges, long size, String contentType) {
+        long length = closeDelimiter().length;
+        for (HttpRange r : ranges)
+            length += partHead(r, size, contentType).length + r.length() + 2;
+        return length;
+    }
+
+    /** Writes every range as a part with its own Content-Type and Content-Range. */
+    static void writeMultipart(OutputStream out, List<HttpRange> ranges, long size, String contentType, Body body)
+            throws IOException {
+        for (HttpRange r : ranges) {
+            out.write(partHead(r, size, contentType));
+            body.write(r.first, r.length());
+            out.write('\r');
+            out.write('\n');
+        }
+        out.write(closeDelimiter());
+    }
+
+    private static byte[] partHead(HttpRange r, long size, String contentType) {
+        return ("--" + BOUNDARY + "\r\n" +
+                (contentType != null ? "Content-Type: " + contentType + "\r\n" : "") +
+                "Content-Range: " + r.contentRange(size) + "\r\n" +
+                "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] closeDelimiter() {
+        return ("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** The 416 response for a body of {@code size} bytes. */
+    static String notSatisfiable(long size, String connection) {
+        return "HTTP/1.1 416 Range Not Satisfiable\r\n" +
+                "Content-Range: bytes */" + size + "\r\n" +
+                "Content-Length: 0\r\n" +
+                connection +
+                "\r\n";
+    }
+}
@@ -0,0 +1,439 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * HTTP/1.1 request head parser shared by the servers. It works on the raw bytes in a buffer that
+ * is reused for every request on a connection. Bytes can arrive in any pieces: {@link #fill}
+ * appends what the socket has, and {@link #parse} continues where the last call stopped, so the
+ * same parser serves blocking sockets ({@link #readFrom}) and the NIO event loops.
+ *
+ * Parsing only records where the request line parts and each header name and value start and
+ * end. The method, target and version become Strings when the request is complete, header values
+ * only when a handler asks for them. Well-known header names are matched once while parsing, and
+ * when a handler passes one of them as a literal ({@code header("Cookie")}), the lookup is a
+ * reference comparison. Names are case-insensitive, the value of a repeated header is the last one.
+ *
+ * The request line and the whole head have size limits. When a request exceeds them or is
+ * malformed, a {@link ParseException} carries the status to answer with before closing.
+ *
+ * Strings returned are independent of the buffer, but {@link #headers()} is a view that is only
+ * valid until {@link #next()}. Not thread-safe: one parser per connection.
+ */
+public class HttpRequestParser {
+    public static final int DEFAULT_MAX_REQUEST_LINE = 8 * 1024;
+    public static final int DEFAULT_MAX_HEAD = 16 * 1024;
+    private static final int MAX_HEADERS = 64;
+    // 이보다 적게 남으면 읽기 전에 버퍼를 앞으로 당김
+    private static final int MIN_READ = 512;
+
+    // 자주 쓰는 헤더 이름, 문자열 literal과 같은 객체라 header("Cookie")는 참조 비교로 찾음
+    private static final String[] KNOWN_NAMES = { "Host", "Connection", "Cookie", "If-Modified-Since",
+            "If-None-Match", "If-Range", "Range", "Accept", "Accept-Encoding", "Accept-Language", "User-Agent",
+            "Referer", "Cache-Control", "Content-Length", "Content-Type", "Transfer-Encoding", "Keep-Alive",
+            "Upgrade-Insecure-Requests" };
+    private static final byte[][] KNOWN_LOWER = new byte[KNOWN_NAMES.length][];
+
+    static {
+        for (int i = 0; i < KNOWN_NAMES.length; i++)
+            KNOWN_LOWER[i] = KNOWN_NAMES[i].toLowerCase(Locale.ROOT).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** A request that cannot be served; send {@link #response()} and close the connection. */
+    public static class ParseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public final int status;
+
+        ParseException(int status, String reason) {
+            super(status + " " + reason);
+            this.status = status;
+        }
+
+        public byte[] response() {
+            return ("HTTP/1.1 " + getMessage() + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private final int maxRequestLine;
+    private final int maxHead;
+    private byte[] buf;
+    private ByteBuffer view;
+
+    // buf 안의 절대 위치: 현재 요청 시작, 읽어 둔 끝, 다음에 볼 byte, 현재 줄 시작, head 끝
+    private int start, limit, scan, lineStart, end;
+    private boolean requestLineDone, complete;
+
+    // 아래 위치는 모두 start 기준 상대 위치 (버퍼를 당겨도 그대로)
+    private int methodEnd, targetStart, targetEnd, versionStart, versionEnd;
+    private int count;
+    private final int[] nameStart = new int[MAX_HEADERS], nameEnd = new int[MAX_HEADERS];
+    private final int[] valueStart = new int[MAX_HEADERS], valueEnd = new int[MAX_HEADERS];
+    // KNOWN_NAMES 의 index, 모르는 이름이면 -1
+    private final int[] known = new int[MAX_HEADERS];
+    private final String[] values = new String[MAX_HEADERS];
+
+    private String method, target, version;
+    private final Headers headers = new Headers();
+
+    public HttpRequestParser() {
+        this(2048, DEFAULT_MAX_REQUEST_LINE, DEFAULT_MAX_HEAD);
+    }
+
+    /** The buffer starts at {@code initialSize} bytes and grows up to {@code maxHead}. */
+    public HttpRequestParser(int initialSize, int maxRequestLine, int maxHead) {
+        this.maxRequestLine = maxRequestLine;
+        this.maxHead = maxHead;
+        this.buf = new byte[Math.min(initialSize, maxHead)];
+        this.view = ByteBuffer.wrap(buf);
+    }
+
+    /**
+     * Reads from {@code in} until a request head is complete. Returns false if the stream ends
+     * first, which between requests is the client closing its keep-alive connection.
+     */
+    public boolean readFrom(InputStream in) throws IOException {
+        while (!parse()) {
+            if (fill(in) == -1)
+                return false;
+        }
+        return true;
+    }
+
+    /** Appends what {@code in} has to the buffer; returns the bytes read or -1 at end of stream. */
+    public int fill(InputStream in) throws IOException {
+        makeRoom();
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n > 0)
+            limit += n;
+        return n;
+    }
+
+    /** Like {@link #fill(InputStream)} for a channel; 0 if a non-blocking channel has nothing. */
+    public int fill(ReadableByteChannel channel) throws IOException {
+        makeRoom();
+        view.limit(buf.length).position(limit);
+        int n = channel.read(view);
+        if (n > 0)
+            limit += n;
+        return n;
+    }
+
+    /**
+     * Parses the bytes read so far. Returns true once the request head is complete, false if more
+     * bytes are needed. After handling a complete request call {@link #next()}.
+     */
+    public boolean parse() throws ParseException {
+        if (complete)
+            return true;
+        while (scan < limit) {
+            if (buf[scan++] != '\n')
+                continue;
+            int lineEnd = scan - 1;
+            if (lineEnd > lineStart && buf[lineEnd - 1] == '\r')
+                lineEnd--;
+            if (!requestLineDone) {
+                if (lineEnd == lineStart) {
+                    // 요청 앞의 빈 줄은 건너뜀
+                    start = lineStart = scan;
+                    continue;
+                }
+                if (lineEnd - lineStart > maxRequestLine)
+                    throw new ParseException(414, "URI Too Long");
+                requestLine(lineStart, lineEnd);
+                requestLineDone = true;
+            } else if (lineEnd == lineStart) {
+                end = scan;
+                complete = true;
+                method = method();
+                target = new String(buf, start + targetStart, targetEnd - targetStart, StandardCharsets.ISO_8859_1);
+                version = version();
+                return true;
+            } else {
+                header(lineStart, lineEnd);
+            }
+            if (scan - start > maxHead)
+                throw new ParseException(431, "Request Header Fields Too Large");
+            lineStart = scan;
+        }
+        if (!requestLineDone && scan - lineStart > maxRequestLine)
+            throw new ParseException(414, "URI Too Long");
+        if (scan - start > maxHead)
+            throw new ParseException(431, "Request Header Fields Too Large");
+        return false;
+    }
+
+    /** Drops the handled request; bytes of a following (pipelined) request stay in the buffer. */
+    public void next() {
+        if (complete)
+            start = end;
+        Arrays.fill(values, 0, count, null);
+        count = 0;
+        complete = requestLineDone = false;
+        method = target = version = null;
+        scan = lineStart = start;
+        if (start == limit)
+            start = limit = scan = lineStart = 0;
+    }
+
+    /** Forgets everything buffered, for reusing the parser on a new connection. */
+    public void reset() {
+        next();
+        start = limit = scan = lineStart = 0;
+    }
+
+    /** True if bytes beyond the current request have already been read. */
+    public boolean hasBuffered() {
+        return limit > (complete ? end : start);
+    }
+
+    public String method() {
+        if (method != null)
+            return method;
+        if (isToken(0, methodEnd, "GET"))
+            return "GET";
+        if (isToken(0, methodEnd, "HEAD"))
+            return "HEAD";
+        if (isToken(0, methodEnd, "POST"))
+            return "POST";
+        return new String(buf, start, methodEnd, StandardCharsets.ISO_8859_1);
+    }
+
+    /** The request target as sent, e.g. "/pictures/paris.jpg". */
+    public String target() {
+        return target;
+    }
+
+    public String version() {
+        if (version != null)
+            return version;
+        if (isToken(versionStart, versionEnd, "HTTP/1.1"))
+            return "HTTP/1.1";
+        if (isToken(versionStart, versionEnd, "HTTP/1.0"))
+            return "HTTP/1.0";
+        return new String(buf, start + versionStart, versionEnd - versionStart, StandardCharsets.ISO_8859_1);
+    }
+
+    /** The request line without CRLF, as the old readLine() based code had it. */
+    public String requestLine() {
+        return method + " " + target + " " + version;
+    }
+
+    /** The value of header {@code name}, or null. */
+    public String header(String name) {
+        int id = knownId(name);
+        for (int i = count - 1; i >= 0; i--) {
+            if (id >= 0 ? known[i] == id : known[i] < 0 && nameEquals(i, name))
+                return value(i);
+        }
+        return null;
+    }
+
+    /**
+     * The headers as a read-only, case-insensitive map for handlers that take a Map. get() looks
+     * the header up as {@link #header} does; iterating creates the name and value Strings.
+     */
+    public Map<String, String> headers() {
+        return headers;
+    }
+
+    private void requestLine(int from, int to) throws ParseException {
+        int sp1 = indexOf(from, to, (byte) ' ');
+        int sp2 = sp1 < 0 ? -1 : indexOf(sp1 + 1, to, (byte) ' ');
+        if (sp1 <= from || sp2 <= sp1 + 1 || !startsWith(sp2 + 1, to, "HTTP/"))
+            throw new ParseException(400, "Bad Request");
+        methodEnd = sp1 - start;
+        targetStart = sp1 + 1 - start;
+        targetEnd = sp2 - start;
+        versionStart = sp2 + 1 - start;
+        versionEnd = to - start;
+    }
+
+    private void header(int from, int to) throws ParseException {
+        int colon = indexOf(from, to, (byte) ':');
+        // ':' 없는 줄과 obs-fold(공백으로 시작하는 줄)는 예전처럼 무시
+        if (colon <= from || buf[from] == ' ' || buf[from] == '\t')
+            return;
+        if (count == MAX_HEADERS)
+            throw new ParseException(431, "Request Header Fields Too Large");
+        int ne = colon;
+        while (ne > from && isSpace(buf[ne - 1]))
+            ne--;
+        int vs = colon + 1, ve = to;
+        while (vs < ve && isSpace(buf[vs]))
+            vs++;
+        while (ve > vs && isSpace(buf[ve - 1]))
+            ve--;
+        nameStart[count] = from - start;
+        nameEnd[count] = ne - start;
+        valueStart[count] = vs - start;
+        valueEnd[count] = ve - start;
+        known[count] = knownId(from, ne);
+        count++;
+    }
+
+    private void makeRoom() throws ParseException {
+        if (buf.length - limit >= MIN_READ)
+            return;
+        if (start > 0) {
+            // 처리한 요청의 byte를 버리고 남은 것을 앞으로
+            System.arraycopy(buf, start, buf, 0, limit - start);
+            limit -= start;
+            scan -= start;
+            lineStart -= start;
+            end -= start;
+            start = 0;
+        }
+        if (buf.length - limit >= MIN_READ || (limit < buf.length && buf.length >= maxHead))
+            return;
+        if (buf.length >= maxHead)
+            throw new ParseException(431, "Request Header Fields Too Large");
+        buf = Arrays.copyOf(buf, Math.min(buf.length * 2, maxHead));
+        view = ByteBuffer.wrap(buf);
+    }
+
+    private String value(int i) {
+        String v = values[i];
+        if (v == null) {
+            v = new String(buf, start + valueStart[i], valueEnd[i] - valueStart[i], StandardCharsets.ISO_8859_1);
+            values[i] = v;
+        }
+        return v;
+    }
+
+    private String name(int i) {
+        if (known[i] >= 0)
+            return KNOWN_NAMES[known[i]];
+        return new String(buf, start + nameStart[i], nameEnd[i] - nameStart[i], StandardCharsets.ISO_8859_1);
+    }
+
+    private static int knownId(String name) {
+        for (int i = 0; i < KNOWN_NAMES.length; i++) {
+            if (KNOWN_NAMES[i] == name)
+                return i;
+        }
+        for (int i = 0; i < KNOWN_NAMES.length; i++) {
+            if (KNOWN_NAMES[i].equalsIgnoreCase(name))
+                return i;
+        }
+        return -1;
+    }
+
+    private int knownId(int from, int to) {
+        int length = to - from;
+        for (int i = 0; i < KNOWN_LOWER.length; i++) {
+            byte[] lower = KNOWN_LOWER[i];
+            if (lower.length != length)
+                continue;
+            int j = 0;
+            while (j < length && toLower(buf[from + j]) == lower[j])
+                j++;
+            if (j == length)
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int i, String name) {
+        int from = start + nameStart[i];
+        int length = nameEnd[i] - nameStart[i];
+        if (length != name.length())
+            return false;
+        for (int j = 0; j < length; j++) {
+            if (toLower(buf[from + j]) != toLower((byte) name.charAt(j)))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean isToken(int from, int to, String token) {
+        if (to - from != token.length())
+            return false;
+        return startsWith(start + from, start + to, token);
+    }
+
+    private boolean startsWith(int from, int to, String prefix) {
+        if (to - from < prefix.length())
+            return false;
+        for (int j = 0; j < prefix.length(); j++) {
+            if (buf[from + j] != prefix.charAt(j))
+                return false;
+        }
+        return true;
+    }
+
+    private int indexOf(int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b)
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+
+    private class Headers extends AbstractMap<String, String> {
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? header((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return count;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Iterator<>() {
+                        private int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < count;
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            if (i >= count)
+                                throw new NoSuchElementException();
+                            Map.Entry<String, String> e = new SimpleImmutableEntry<>(name(i), value(i));
+                            i++;
+                            return e;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
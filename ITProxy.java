@@ -6,53 +6,77 @@ import com.google.gson.JsonParser;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ITProxy {
     private static final int PORT = 8085;
     private static HashMap<String, CachedResource> cache = new HashMap<>();
+    private static final Map<String, UpstreamPool> upstreams = new ConcurrentHashMap<>();
+    private static final Template DETAIL_TEMPLATE = new Template(Paths.get("resources/detail.html"),
+            "TRAVEL DESTINATION TITLE", "TRAVEL DESTINATION DESCRIPTION", "IMAGE SRC");
 
     public static void main(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--log-level=")) {
+                Log.setLevel(arg.substring(12));
+            } else if (arg.startsWith("--access-log=")) {
+                try {
+                    Log.setAccessLog(arg.substring(13));
+                } catch (IOException e) {
+                    System.err.println("Cannot open access log: " + e.getMessage());
+                    return;
+                }
+            }
+        }
         try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Proxy server listening on port: " + PORT);
+            Log.info("Proxy server listening on port: {}", PORT);
 
             while (true) {
                 Socket clientSocket = serverSocket.accept();
                 new Thread(() -> handleClient(clientSocket)).start();
             }
         } catch (IOException e) {
-            System.err.println("[ERROR] Exception: " + e.getMessage());
-
-            e.printStackTrace();
+            Log.error("Exception: {}", e.getMessage(), e);
             // sendErrorResponse(out); // 500 오류 응답 전송
         }
     }
 
     private static void handleClient(Socket clientSocket) {
-        try (BufferedReader in = new BufferedReader(new java.io.InputStreamReader(clientSocket.getInputStream()));
-                OutputStream out = clientSocket.getOutputStream()) {
-
-            // 클라이언트의 요청 라인 읽기
-            String requestLine = in.readLine();
-            System.out.println("[DEBUG] Request line: " + requestLine);
+        try (OutputStream out = clientSocket.getOutputStream()) {
+
+            // 클라이언트의 요청 라인과 헤더 읽기
+            HttpRequestParser request = new HttpRequestParser();
+            boolean received;
+            try {
+                received = request.readFrom(clientSocket.getInputStream());
+            } catch (HttpRequestParser.ParseException e) {
+                out.write(e.response());
+                return;
+            }
+            long start = System.nanoTime();
 
-            if (requestLine != null && requestLine.startsWith("GET")) {
-                String[] requestParts = requestLine.split(" ");
-                String requestPath = requestParts[1];
-                System.out.println("[DEBUG] Parsed request path: " + requestPath);
+            if (received && request.method().equals("GET")) {
+                String requestLine = request.requestLine();
+                Log.debug("Request line: {}", requestLine);
+                Log.debug("Parsed request path: {}", request.target());
 
                 // 프록시 서버로 받은 요청을 웹 서버로 전달
-                forwardRequestToServer(clientSocket, requestLine, "localhost", 8080); // 8080번 포트에 웹 서버 연결
+                int status = forwardRequestToServer(clientSocket, requestLine, "localhost", 8080); // 8080번 포트에 웹 서버 연결
+                WebServer.logAccess(request.method(), request.target(), status, -1, start);
 
             } else {
                 sendNotFoundResponse(out); // GET 요청이 아니면 404 반환
+                if (received)
+                    WebServer.logAccess(request.method(), request.target(), 404, -1, start);
             }
 
         } catch (IOException e) {
-            System.err.println("[ERROR] Exception: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Exception: {}", e.getMessage(), e);
         }
     }
 
@@ -74,10 +98,9 @@ public class ITProxy {
             out.write(header.getBytes());
             out.write(content.getBytes());
             out.flush();
-            System.out.println("[DEBUG] Sending " + filePath);
+            Log.debug("Sending {}", filePath);
         } catch (Exception e) {
-            System.err.println("[ERROR] Exception: " + e.getMessage());
-            e.printStackTrace(); // 오류 메시지 출력
+            Log.error("Exception: {}", e.getMessage(), e); // 오류 메시지 출력
             sendErrorResponse(out); // 500 오류 응답 전송
         }
 
@@ -94,9 +117,9 @@ public class ITProxy {
             out.write(header.getBytes());
             out.write(imageBytes);
             out.flush();
-            System.out.println("[DEBUG] Sending image: " + imagePath);
+            Log.debug("Sending image: {}", imagePath);
         } catch (IOException e) {
-            System.out.println("[DEBUG] Image not found: " + imagePath);
+            Log.debug("Image not found: {}", imagePath);
             sendNotFoundResponse(out);
         }
     }
@@ -113,10 +136,9 @@ public class ITProxy {
             out.write(header.getBytes());
             out.write(content.getBytes());
             out.flush();
-            System.out.println("[DEBUG] Sending " + type + " destination page.");
+            Log.debug("Sending {} destination page.", type);
         } catch (Exception e) {
-            System.err.println("[ERROR] Exception: " + e.getMessage());
-            e.printStackTrace(); // 오류 메시지 출력
+            Log.error("Exception: {}", e.getMessage(), e); // 오류 메시지 출력
             sendErrorResponse(out); // 500 오류 응답 전송
         }
     }
@@ -138,7 +160,7 @@ public class ITProxy {
             return destinationTitles.toString();
 
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.error("Exception: {}", e.getMessage(), e);
             return "Error loading destination page";
         }
     }
@@ -159,25 +181,22 @@ public class ITProxy {
                 }
             }
 
-            String htmlContent = new String(Files.readAllBytes(Paths.get("resources/detail.html")));
-            htmlContent = htmlContent.replace("TRAVEL DESTINATION TITLE", destinationName);
-            htmlContent = htmlContent.replace("TRAVEL DESTINATION DESCRIPTION", description);
             String[] imageParts = image.split("//");
-            htmlContent = htmlContent.replace("IMAGE SRC", "pictures/" + imageParts[1]);
+            byte[][] values = Template.encode(destinationName, description, "pictures/" + imageParts[1]);
 
             String header = "HTTP/1.1 200 OK\r\n" +
                     "Content-Type: text/html\r\n" +
-                    "Content-Length: " + htmlContent.length() + "\r\n" +
+                    "Content-Length: " + DETAIL_TEMPLATE.contentLength(values) + "\r\n" +
                     "\r\n";
 
-            out.write(header.getBytes());
-            out.write(htmlContent.getBytes());
-            out.flush();
-            System.out.println("[DEBUG] Sending detail page for: " + destinationName);
+            BufferedOutputStream buffered = new BufferedOutputStream(out);
+            buffered.write(header.getBytes());
+            DETAIL_TEMPLATE.render(buffered, values);
+            buffered.flush();
+            Log.debug("Sending detail page for: {}", destinationName);
 
         } catch (IOException e) {
-            System.err.println("[ERROR] Exception: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Exception: {}", e.getMessage(), e);
             sendErrorResponse(out); // 500 오류 응답 전송
         }
     }
@@ -194,10 +213,9 @@ public class ITProxy {
             out.write(header.getBytes());
             out.write(content.getBytes());
             out.flush();
-            System.out.println("[DEBUG] Sent 404 Not Found page.");
+            Log.debug("Sent 404 Not Found page.");
         } catch (Exception e) {
-            System.err.println("[ERROR] Exception: " + e.getMessage());
-            e.printStackTrace(); // 오류 메시지 출력
+            Log.error("Exception: {}", e.getMessage(), e); // 오류 메시지 출력
             sendErrorResponse(out); // 500 오류 응답 전송
         }
 
@@ -213,32 +231,53 @@ public class ITProxy {
         out.write(header.getBytes());
         out.write(content.getBytes());
         out.flush();
-        System.out.println("[DEBUG] Sent 500 Internal Server Error page.");
+        Log.debug("Sent 500 Internal Server Error page.");
     }
 
-    private static void forwardRequestToServer(Socket clientSocket, String requestLine, String serverHost,
+    /** Returns the web server's status code, or 502 if the request could not be forwarded. */
+    private static int forwardRequestToServer(Socket clientSocket, String requestLine, String serverHost,
             int serverPort) {
+        // 서버별 keep-alive 연결 풀에서 연결을 빌려 씀
+        UpstreamPool pool = upstreams.computeIfAbsent(serverHost + ":" + serverPort,
+                k -> new UpstreamPool(serverHost, serverPort, 32, 4000));
+        UpstreamPool.Connection serverConn = null;
         try {
-            // 서버에 요청을 전달하기 위한 연결
-            Socket serverSocket = new Socket(serverHost, serverPort);
-            OutputStream serverOut = serverSocket.getOutputStream();
-            InputStream serverIn = serverSocket.getInputStream();
-
-            // 요청을 서버로 전달
-            serverOut.write(requestLine.getBytes());
-            serverOut.flush();
-
-            // 서버 응답을 클라이언트로 전달
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = serverIn.read(buffer)) != -1) {
-                clientSocket.getOutputStream().write(buffer, 0, bytesRead);
+            String responseHead = null;
+            // 재사용한 연결은 그 사이 서버가 닫았을 수 있으니 새 연결로 한 번 더 시도
+            for (int attempt = 0; responseHead == null && attempt < 2; attempt++) {
+                serverConn = pool.acquire();
+                try {
+                    // 요청을 서버로 전달
+                    serverConn.send(requestLine + "\r\nHost: " + serverHost + "\r\nConnection: keep-alive\r\n\r\n");
+                    responseHead = serverConn.readResponseHead(64 * 1024);
+                } catch (IOException e) {
+                    if (!serverConn.isReused())
+                        throw e;
+                }
+                if (responseHead == null) {
+                    pool.release(serverConn, false);
+                    serverConn = null;
+                }
             }
-            clientSocket.getOutputStream().flush();
-
-            serverSocket.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (responseHead == null)
+                return 502;
+
+            // 서버 응답을 클라이언트로 전달 (Content-Length / chunked 만큼만 읽음)
+            OutputStream clientOut = clientSocket.getOutputStream();
+            String clientHead = ProxyServer.extractHeader(responseHead, "Transfer-Encoding") != null
+                    ? UpstreamPool.withoutFraming(responseHead) + "Connection: close\r\n" : responseHead;
+            clientOut.write((clientHead + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            serverConn.body(responseHead).transferTo(clientOut);
+            clientOut.flush();
+
+            int status = Integer.parseInt(responseHead.substring(9, 12));
+            pool.release(serverConn, serverConn.canReuse(responseHead));
+            return status;
+        } catch (IOException | RuntimeException e) {
+            Log.warn("Forwarding {} failed: {}", requestLine, e.toString());
+            if (serverConn != null)
+                pool.release(serverConn, false);
+            return 502;
         }
     }
 
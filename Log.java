@@ -0,0 +1,338 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous leveled logger for the servers' request paths. Calls only fill a slot in a fixed
+ * ring buffer (no lock, no formatting, no I/O); a background thread formats the messages and
+ * writes them in batches with one flush per batch. When the ring is full, DEBUG and INFO messages
+ * are dropped and counted instead of blocking the request; WARN, ERROR and access log lines wait
+ * for the writer to make room.
+ *
+ * Messages use {} placeholders that are filled in on the writer thread, so a disabled level costs
+ * a single comparison. A trailing Throwable argument is printed with its stack trace.
+ *
+ * The access log is off unless {@link #setAccessLog} is given "stdout" or a file. Its lines are
+ * key=value pairs: time, method, path, status, bytes, latency in microseconds and optional extras.
+ */
+public final class Log {
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    // 한 번에 쓰고 flush하는 최대 메시지 수
+    private static final int BATCH = 256;
+
+    private static volatile Level level = Level.INFO;
+    private static volatile boolean accessEnabled;
+    private static volatile PrintStream accessOut;
+
+    // slot은 미리 만들어 두고 재사용, sequences로 생산자/소비자 차례를 맞춤
+    private static final Event[] ring = new Event[CAPACITY];
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong();
+    private static final LongAdder dropped = new LongAdder();
+    private static final Thread writer;
+    private static volatile boolean writerParked;
+
+    // 아래는 writer 스레드만 사용 (System.out의 lock을 거치지 않고 fd에 직접 씀)
+    private static long head = 0;
+    private static final StringBuilder line = new StringBuilder(512);
+    // 같은 ms 안의 메시지는 시간 문자열을 다시 만들지 않음
+    private static long lastMillis = -1;
+    private static String lastTime;
+    private static final PrintStream stdout = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024), false, StandardCharsets.UTF_8);
+    private static final PrintStream stderr = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), 16 * 1024), false, StandardCharsets.UTF_8);
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Event();
+            sequences.set(i, i);
+        }
+        writer = new Thread(Log::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drainRemaining, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    private static final class Event {
+        Level level;
+        boolean access;
+        long time;
+        String thread;
+        String format;
+        Object a, b, c;
+        // access log: status, bytes, latency
+        long status, bytes, micros;
+    }
+
+    /** Parses "debug", "info", "warn", "error" or "off". */
+    public static void setLevel(String name) {
+        level = Level.valueOf(name.toUpperCase());
+    }
+
+    public static boolean isDebugEnabled() {
+        return level == Level.DEBUG;
+    }
+
+    /** Enables the access log, written to stdout or appended to {@code target}. */
+    public static void setAccessLog(String target) throws IOException {
+        accessOut = target.equals("stdout") ? null
+                : new PrintStream(new BufferedOutputStream(new FileOutputStream(target, true), 64 * 1024), false,
+                        StandardCharsets.UTF_8);
+        accessEnabled = true;
+    }
+
+    public static boolean isAccessLogEnabled() {
+        return accessEnabled;
+    }
+
+    public static void debug(String format) {
+        log(Level.DEBUG, format, null, null, null);
+    }
+
+    public static void debug(String format, Object a) {
+        log(Level.DEBUG, format, a, null, null);
+    }
+
+    public static void debug(String format, Object a, Object b) {
+        log(Level.DEBUG, format, a, b, null);
+    }
+
+    public static void debug(String format, Object a, Object b, Object c) {
+        log(Level.DEBUG, format, a, b, c);
+    }
+
+    public static void info(String format) {
+        log(Level.INFO, format, null, null, null);
+    }
+
+    public static void info(String format, Object a) {
+        log(Level.INFO, format, a, null, null);
+    }
+
+    public static void info(String format, Object a, Object b) {
+        log(Level.INFO, format, a, b, null);
+    }
+
+    public static void info(String format, Object a, Object b, Object c) {
+        log(Level.INFO, format, a, b, c);
+    }
+
+    public static void warn(String format) {
+        log(Level.WARN, format, null, null, null);
+    }
+
+    public static void warn(String format, Object a) {
+        log(Level.WARN, format, a, null, null);
+    }
+
+    public static void warn(String format, Object a, Object b) {
+        log(Level.WARN, format, a, b, null);
+    }
+
+    public static void warn(String format, Object a, Object b, Object c) {
+        log(Level.WARN, format, a, b, c);
+    }
+
+    public static void error(String format, Object a) {
+        log(Level.ERROR, format, a, null, null);
+    }
+
+    public static void error(String format, Object a, Object b) {
+        log(Level.ERROR, format, a, b, null);
+    }
+
+    public static void error(String format, Object a, Object b, Object c) {
+        log(Level.ERROR, format, a, b, c);
+    }
+
+    /**
+     * One access log line. {@code bytes} is -1 when unknown; {@code extra} is appended as is
+     * (e.g. "cache=hit") and may be null.
+     */
+    public static void access(String method, String path, int status, long bytes, long startNanos, String extra) {
+        if (!accessEnabled)
+            return;
+        long latencyMicros = (System.nanoTime() - startNanos) / 1000;
+        long pos = claim(true);
+        if (pos < 0)
+            return;
+        Event e = ring[(int) (pos & MASK)];
+        e.access = true;
+        e.level = Level.INFO;
+        e.a = method;
+        e.b = path;
+        e.c = extra;
+        e.status = status;
+        e.bytes = bytes;
+        e.micros = latencyMicros;
+        publish(pos);
+    }
+
+    public static long dropped() {
+        return dropped.sum();
+    }
+
+    private static void log(Level at, String format, Object a, Object b, Object c) {
+        if (at.compareTo(level) < 0)
+            return;
+        long pos = claim(at.compareTo(Level.WARN) >= 0);
+        if (pos < 0)
+            return;
+        Event e = ring[(int) (pos & MASK)];
+        e.access = false;
+        e.level = at;
+        e.format = format;
+        e.a = a;
+        e.b = b;
+        e.c = c;
+        publish(pos);
+    }
+
+    /** Reserves the next slot and returns its position, or -1 if the ring is full and not {@code wait}. */
+    private static long claim(boolean wait) {
+        long pos;
+        while (true) {
+            pos = tail.get();
+            long seq = sequences.get((int) (pos & MASK));
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1))
+                    break;
+            } else if (seq < pos) {
+                // writer가 아직 비우지 못한 slot: 가득 참
+                if (!wait) {
+                    dropped.increment();
+                    return -1;
+                }
+                LockSupport.unpark(writer);
+                Thread.yield();
+            }
+        }
+        Event e = ring[(int) (pos & MASK)];
+        e.time = System.currentTimeMillis();
+        e.thread = Thread.currentThread().getName();
+        return pos;
+    }
+
+    private static void publish(long pos) {
+        sequences.set((int) (pos & MASK), pos + 1);
+        if (writerParked)
+            LockSupport.unpark(writer);
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            if (drainBatch() == 0) {
+                writerParked = true;
+                // 깨우기 전에 들어온 메시지를 놓치지 않도록 한 번 더 확인
+                if (drainBatch() == 0)
+                    LockSupport.parkNanos(100_000_000L);
+                writerParked = false;
+            }
+        }
+    }
+
+    private static synchronized int drainBatch() {
+        int n = 0;
+        boolean out = false, err = false, access = false;
+        while (n < BATCH) {
+            int index = (int) (head & MASK);
+            if (sequences.get(index) != head + 1)
+                break;
+            Event e = ring[index];
+            line.setLength(0);
+            if (e.access) {
+                formatAccess(e);
+                PrintStream target = accessOut != null ? accessOut : stdout;
+                target.print(line);
+                access |= target != stdout;
+                out |= target == stdout;
+            } else {
+                Throwable t = format(e);
+                PrintStream target = e.level.compareTo(Level.WARN) >= 0 ? stderr : stdout;
+                target.print(line);
+                if (t != null)
+                    t.printStackTrace(target);
+                err |= target == stderr;
+                out |= target == stdout;
+            }
+            e.format = null;
+            e.a = e.b = e.c = null;
+            sequences.set(index, head + CAPACITY);
+            head++;
+            n++;
+        }
+        if (out)
+            stdout.flush();
+        if (err)
+            stderr.flush();
+        if (access)
+            accessOut.flush();
+        return n;
+    }
+
+    private static void drainRemaining() {
+        while (drainBatch() > 0) {
+        }
+        long lost = dropped();
+        if (lost > 0) {
+            stderr.println("[Log] " + lost + " messages dropped because the log buffer was full");
+            stderr.flush();
+        }
+    }
+
+    private static String time(long millis) {
+        if (millis != lastMillis) {
+            lastTime = Instant.ofEpochMilli(millis).toString();
+            lastMillis = millis;
+        }
+        return lastTime;
+    }
+
+    /** Fills {@link #line} and returns a Throwable left over after the placeholders, if any. */
+    private static Throwable format(Event e) {
+        line.append(time(e.time)).append(' ').append(e.level);
+        if (e.level.name().length() == 4)
+            line.append(' ');
+        line.append(" [").append(e.thread).append("] ");
+        Object[] args = { e.a, e.b, e.c };
+        int used = 0, from = 0;
+        String format = e.format;
+        int at;
+        while (used < args.length && (at = format.indexOf("{}", from)) != -1) {
+            line.append(format, from, at).append(args[used++]);
+            from = at + 2;
+        }
+        line.append(format, from, format.length()).append('\n');
+        for (int i = used; i < args.length; i++) {
+            if (args[i] instanceof Throwable)
+                return (Throwable) args[i];
+        }
+        return null;
+    }
+
+    private static void formatAccess(Event e) {
+        line.append("ts=").append(time(e.time))
+                .append(" method=").append(e.a)
+                .append(" path=").append(e.b)
+                .append(" status=").append(e.status);
+        if (e.bytes >= 0)
+            line.append(" bytes=").append(e.bytes);
+        line.append(" latency_us=").append(e.micros);
+        if (e.c != null)
+            line.append(' ').append(e.c);
+        line.append(" thread=").append(e.thread).append('\n');
+    }
+}
@@ -0,0 +1,229 @@
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Request metrics for one server, exposed in Prometheus text format on {@code /__metrics}.
+ *
+ * Requests are counted per label value (the route for {@link WebServer}, the cache outcome for
+ * {@link ProxyServer}) with request and byte counters and a latency histogram. Everything on the
+ * request path is a {@link LongAdder}, so recording is a few uncontended increments; totals are
+ * only summed when scraped. Other values, e.g. the proxy cache's own counters, are read through
+ * callbacks registered with {@link #counter} and {@link #gauge}.
+ */
+public class Metrics {
+    public static final String PATH = "/__metrics";
+
+    // Prometheus 히스토그램 bucket 경계 (초)
+    private static final String[] LE_SECONDS = { "0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01",
+            "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10" };
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final String prefix;
+    private final String label;
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final LongAdder activeConnections = new LongAdder();
+    private final List<Callback> callbacks = new CopyOnWriteArrayList<>();
+
+    /** {@code prefix} starts every metric name, {@code label} names the per-request dimension. */
+    public Metrics(String prefix, String label, String... labelValues) {
+        this.prefix = prefix;
+        this.label = label;
+        // 미리 만들어 두면 요청이 없던 값도 0으로 보임
+        for (String value : labelValues)
+            series.put(value, new Series());
+    }
+
+    private static class Series {
+        final LongAdder requests = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final Histogram latency = new Histogram();
+    }
+
+    private static class Callback {
+        final String name, help, type;
+        final LongSupplier value;
+
+        Callback(String name, String help, String type, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    /** Records one finished request; {@code bytes} below 0 means unknown. */
+    public void record(String labelValue, long bytes, long latencyNanos) {
+        Series s = series.computeIfAbsent(labelValue, v -> new Series());
+        s.requests.increment();
+        if (bytes > 0)
+            s.bytes.add(bytes);
+        s.latency.record(latencyNanos / 1000);
+    }
+
+    public void connectionOpened() {
+        activeConnections.increment();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    /** Exposes a monotonically increasing value owned elsewhere; {@code name} gets the prefix. */
+    public void counter(String name, String help, LongSupplier value) {
+        callbacks.add(new Callback(prefix + "_" + name, help, "counter", value));
+    }
+
+    public void gauge(String name, String help, LongSupplier value) {
+        callbacks.add(new Callback(prefix + "_" + name, help, "gauge", value));
+    }
+
+    /** All metrics in the Prometheus text exposition format (version 0.0.4). */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(8192);
+        Map<String, long[]> counts = new TreeMap<>();
+        for (Map.Entry<String, Series> e : series.entrySet())
+            counts.put(e.getKey(), e.getValue().latency.snapshot());
+
+        header(out, prefix + "_requests_total", "Requests served, by " + label + ".", "counter");
+        for (String value : counts.keySet())
+            sample(out, prefix + "_requests_total", value, null, series.get(value).requests.sum());
+
+        header(out, prefix + "_response_bytes_total", "Response bytes sent, by " + label + ".", "counter");
+        for (String value : counts.keySet())
+            sample(out, prefix + "_response_bytes_total", value, null, series.get(value).bytes.sum());
+
+        String duration = prefix + "_request_duration_seconds";
+        header(out, duration, "Time from reading the request line to the response being written, by " + label
+                + ".", "histogram");
+        for (Map.Entry<String, long[]> e : counts.entrySet()) {
+            long[] buckets = e.getValue();
+            for (String le : LE_SECONDS) {
+                sample(out, duration + "_bucket", e.getKey(), "le=\"" + le + "\"",
+                        Histogram.countAtOrBelow(buckets, Math.round(Double.parseDouble(le) * 1_000_000)));
+            }
+            long count = Histogram.count(buckets);
+            sample(out, duration + "_bucket", e.getKey(), "le=\"+Inf\"", count);
+            out.append(duration).append("_sum{").append(label).append("=\"").append(e.getKey()).append("\"} ")
+                    .append(series.get(e.getKey()).latency.sumMicros() / 1e6).append('\n');
+            sample(out, duration + "_count", e.getKey(), null, count);
+        }
+
+        // 히스토그램 bucket에서 바로 읽은 분위수 (bucket 폭, 약 6% 이내로 정확)
+        String quantiles = prefix + "_request_duration_quantile_seconds";
+        header(out, quantiles, "Latency quantiles from the same histogram, by " + label + ".", "gauge");
+        for (Map.Entry<String, long[]> e : counts.entrySet()) {
+            for (double q : QUANTILES) {
+                out.append(quantiles).append('{').append(label).append("=\"").append(e.getKey())
+                        .append("\",quantile=\"").append(q).append("\"} ")
+                        .append(Histogram.quantileMicros(e.getValue(), q) / 1e6).append('\n');
+            }
+        }
+
+        header(out, prefix + "_active_connections", "Open client connections.", "gauge");
+        out.append(prefix).append("_active_connections ").append(activeConnections.sum()).append('\n');
+
+        for (Callback c : callbacks) {
+            header(out, c.name, c.help, c.type);
+            out.append(c.name).append(' ').append(c.value.getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void sample(StringBuilder out, String name, String labelValue, String extra, long value) {
+        out.append(name).append('{').append(label).append("=\"").append(labelValue).append('"');
+        if (extra != null)
+            out.append(',').append(extra);
+        out.append("} ").append(value).append('\n');
+    }
+
+    /**
+     * Log-linear histogram in microseconds, like HdrHistogram with one significant digit: values
+     * below 16 have their own bucket, above that every power of two is split into 16 buckets, so a
+     * bucket is at most 1/16 of its value wide. Covers up to 2^36 us (about 19 hours).
+     */
+    static class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BUCKETS = (36 - SUB_BITS + 1) * SUB + SUB;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder sum = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        void record(long micros) {
+            buckets[index(Math.max(micros, 0))].increment();
+            sum.add(micros);
+        }
+
+        long sumMicros() {
+            return sum.sum();
+        }
+
+        long[] snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+                counts[i] = buckets[i].sum();
+            return counts;
+        }
+
+        static int index(long micros) {
+            if (micros < SUB)
+                return (int) micros;
+            int exp = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB - 1);
+            return Math.min((exp - SUB_BITS + 1) * SUB + sub, BUCKETS - 1);
+        }
+
+        /** Smallest value that no longer falls into bucket {@code index}. */
+        static long upperBound(int index) {
+            if (index < SUB)
+                return index + 1;
+            int exp = index / SUB + SUB_BITS - 1;
+            return ((long) (SUB + index % SUB) + 1) << (exp - SUB_BITS);
+        }
+
+        static long count(long[] counts) {
+            long total = 0;
+            for (long c : counts)
+                total += c;
+            return total;
+        }
+
+        /** Requests in buckets that lie entirely at or below {@code micros}. */
+        static long countAtOrBelow(long[] counts, long micros) {
+            long total = 0;
+            for (int i = 0; i < counts.length && upperBound(i) - 1 <= micros; i++)
+                total += counts[i];
+            return total;
+        }
+
+        /** Upper bound of the bucket holding the {@code q} quantile, 0 if empty. */
+        static long quantileMicros(long[] counts, double q) {
+            long total = count(counts);
+            if (total == 0)
+                return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return upperBound(i) - 1;
+            }
+            return upperBound(counts.length - 1) - 1;
+        }
+    }
+}
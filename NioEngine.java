@@ -0,0 +1,278 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Selector based engine for {@link WebServer}. The accept thread hands every new connection to
+ * one of N event loops; each loop owns a Selector and drives reads, request parsing and response
+ * flushing for its connections without a thread or a reader per socket.
+ */
+public class NioEngine {
+    private final WebServer server;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+
+    public NioEngine(WebServer server, ServerSocketChannel serverChannel, int eventLoops) throws IOException {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.loops = new EventLoop[Math.max(1, eventLoops)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    public void run() {
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        int next = 0;
+        while (true) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (IOException e) {
+                Log.warn("Error accepting client connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private long lastIdleCheck = System.currentTimeMillis();
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-loop-" + index);
+        }
+
+        void register(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select(1000);
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection conn = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable())
+                                conn.flush(key);
+                            if (key.isValid() && key.isReadable())
+                                conn.read(key);
+                        } catch (IOException | RuntimeException e) {
+                            Log.warn("Error handling client connection: {}", e.getMessage());
+                            conn.close(key);
+                        }
+                    }
+                    closeIdleConnections();
+                } catch (IOException e) {
+                    Log.warn("Event loop error: {}", e.getMessage());
+                }
+            }
+        }
+
+        private void closeIdleConnections() {
+            long now = System.currentTimeMillis();
+            if (now - lastIdleCheck < 1000)
+                return;
+            lastIdleCheck = now;
+            int timeout = server.getKeepAliveTimeout();
+            for (SelectionKey key : selector.keys()) {
+                Connection conn = (Connection) key.attachment();
+                if (conn != null && conn.output.isEmpty() && now - conn.lastActive > timeout) {
+                    conn.close(key);
+                }
+            }
+        }
+
+        private class Connection {
+            private final SocketChannel channel;
+            // ByteBuffer 또는 FileRegion
+            private final Deque<Object> output = new ArrayDeque<>();
+            // 연결마다 하나, 다 읽지 못한 요청은 여기 남아 있음
+            private final HttpRequestParser request = new HttpRequestParser(1024,
+                    HttpRequestParser.DEFAULT_MAX_REQUEST_LINE, HttpRequestParser.DEFAULT_MAX_HEAD);
+            private int served = 0;
+            private boolean closeAfterFlush = false;
+            private long lastActive = System.currentTimeMillis();
+            private boolean closed = false;
+
+            Connection(SocketChannel channel) {
+                this.channel = channel;
+                server.metrics().connectionOpened();
+            }
+
+            void read(SelectionKey key) throws IOException {
+                try {
+                    int n = request.fill(channel);
+                    if (n == -1) {
+                        close(key);
+                        return;
+                    }
+                    lastActive = System.currentTimeMillis();
+                    // 버퍼에 완성된 요청이 여러 개 있으면 순서대로 처리 (pipelining)
+                    while (!closeAfterFlush && request.parse()) {
+                        handleRequest();
+                        request.next();
+                    }
+                } catch (HttpRequestParser.ParseException e) {
+                    Log.debug("Bad request: {}", e.getMessage());
+                    output.add(ByteBuffer.wrap(e.response()));
+                    closeAfterFlush = true;
+                }
+                flush(key);
+            }
+
+            private void handleRequest() throws IOException {
+                long start = System.nanoTime();
+                String method = request.method(), path = request.target();
+                Log.debug("Request: {} {}", method, path);
+                served++;
+                boolean keepAlive = WebServer.isKeepAlive(request) && served < server.getMaxRequestsPerConnection();
+                if (method.equals("GET")) {
+                    ResponseBuffer out = new ResponseBuffer(output);
+                    int status = server.handleGet(out, keepAlive, path, request.headers());
+                    out.close();
+                    // 응답이 큐에 들어간 시점까지의 시간 (전송 완료는 flush에서)
+                    server.finishRequest(method, path, status, out.bytesWritten(), start);
+                } else {
+                    keepAlive = false;
+                    server.finishRequest(method, path, 0, -1, start);
+                }
+                if (!keepAlive)
+                    closeAfterFlush = true;
+            }
+
+            void flush(SelectionKey key) throws IOException {
+                while (!output.isEmpty()) {
+                    Object chunk = output.peek();
+                    boolean done;
+                    if (chunk instanceof ByteBuffer) {
+                        ByteBuffer buf = (ByteBuffer) chunk;
+                        channel.write(buf);
+                        done = !buf.hasRemaining();
+                    } else {
+                        done = ((FileRegion) chunk).transferTo(channel);
+                    }
+                    if (!done) {
+                        // 소켓 송신 버퍼가 가득 참: 쓰기 가능해질 때까지 읽기를 멈춤
+                        key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    output.poll();
+                }
+                lastActive = System.currentTimeMillis();
+                if (closeAfterFlush) {
+                    close(key);
+                } else {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+
+            void close(SelectionKey key) {
+                if (!closed) {
+                    closed = true;
+                    server.metrics().connectionClosed();
+                }
+                key.cancel();
+                for (Object chunk : output) {
+                    if (chunk instanceof FileRegion)
+                        ((FileRegion) chunk).close();
+                }
+                output.clear();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    Log.warn("Error closing client connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects a response produced by {@link WebServer#handleGet} into the connection's output
+     * queue. File bodies are queued as regions and later sent with transferTo as the socket
+     * becomes writable.
+     */
+    private static class ResponseBuffer extends ByteArrayOutputStream implements FileRegionOutput {
+        private final Deque<Object> output;
+        private long bytes = 0;
+
+        ResponseBuffer(Deque<Object> output) {
+            super(1024);
+            this.output = output;
+        }
+
+        @Override
+        public void sendFile(Path file, long position, long count) throws IOException {
+            close();
+            bytes += count;
+            output.add(new FileRegion(FileChannel.open(file, StandardOpenOption.READ), position, count));
+        }
+
+        @Override
+        public void close() {
+            if (count > 0) {
+                bytes += count;
+                output.add(ByteBuffer.wrap(toByteArray()));
+                reset();
+            }
+        }
+
+        long bytesWritten() {
+            return bytes;
+        }
+    }
+
+    private static class FileRegion {
+        private final FileChannel file;
+        private long position;
+        private final long end;
+
+        FileRegion(FileChannel file, long position, long count) {
+            this.file = file;
+            this.position = position;
+            this.end = position + count;
+        }
+
+        /** Returns true once the whole region has been written. */
+        boolean transferTo(WritableByteChannel target) throws IOException {
+            long n = file.transferTo(position, end - position, target);
+            position += n;
+            if (position < end && n == 0 && position >= file.size())
+                throw new IOException("File truncated while sending");
+            if (position >= end) {
+                close();
+                return true;
+            }
+            return false;
+        }
+
+        void close() {
+            try {
+                file.close();
+            } catch (IOException e) {
+                Log.warn("Error closing file: {}", e.getMessage());
+            }
+        }
+    }
+}
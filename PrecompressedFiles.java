@@ -0,0 +1,47 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * gzip/deflate bodies of the static text files {@link WebServer} sends, compressed once per version
+ * of the file. A version is identified by the file's ETag from {@link FileMetadataCache}, so a
+ * changed file is compressed again on the first request after its metadata is re-read.
+ */
+public class PrecompressedFiles {
+    // 이보다 큰 파일은 압축하지 않고 그대로 보냄 (메모리에 통째로 읽어야 하므로)
+    static final long MAX_LENGTH = 1024 * 1024;
+
+    private static class Entry {
+        final String sourceEtag;
+        final byte[] body;
+
+        Entry(String sourceEtag, byte[] body) {
+            this.sourceEtag = sourceEtag;
+            this.body = body;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** True if {@code file} is compressed: large enough to gain from it, small enough to hold. */
+    public boolean covers(FileMetadataCache.Metadata file) {
+        return file.length >= ContentEncoding.MIN_LENGTH && file.length <= MAX_LENGTH;
+    }
+
+    /** The {@code encoding} body of {@code file}, which must be {@link #covers covered}. */
+    public byte[] get(FileMetadataCache.Metadata file, String encoding) throws IOException {
+        String key = file.path + ";" + encoding;
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.sourceEtag.equals(file.etag)) {
+            // 읽는 사이 파일이 바뀌었으면 새 metadata의 ETag가 달라 다음에 다시 압축됨
+            entry = new Entry(file.etag, ContentEncoding.encode(Files.readAllBytes(file.path), encoding));
+            entries.put(key, entry);
+        }
+        return entry.body;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
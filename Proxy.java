@@ -13,6 +13,7 @@ public class Proxy {
 
     // Cache storage
     private static final Map<String, CachedPage> cache = new HashMap<>();
+    private static final UpstreamPool upstream = new UpstreamPool(WEB_SERVER_HOST, WEB_SERVER_PORT, 32, 4000);
 
     public static void main(String[] args) {
         try (ServerSocket serverSocket = new ServerSocket(PROXY_PORT)) {
@@ -88,38 +89,43 @@ public class Proxy {
     }
 
     private static CachedPage fetchAndCachePage(String url) {
-        try (Socket serverSocket = new Socket(WEB_SERVER_HOST, WEB_SERVER_PORT);
-                BufferedReader serverIn = new BufferedReader(new InputStreamReader(serverSocket.getInputStream()));
-                OutputStream serverOut = serverSocket.getOutputStream()) {
-
-            String request = "GET " + url + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
-            serverOut.write(request.getBytes());
-            serverOut.flush();
-
-            StringBuilder responseHeaders = new StringBuilder();
-            ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
-
-            String line;
-            boolean headersEnded = false;
-            while ((line = serverIn.readLine()) != null) {
-                if (!headersEnded) {
-                    responseHeaders.append(line).append("\r\n");
-                    if (line.isEmpty()) {
-                        headersEnded = true;
-                    }
-                } else {
-                    responseBody.write(line.getBytes());
+        UpstreamPool.Connection origin = null;
+        try {
+            String request = "GET " + url + " HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n\r\n";
+            String responseHeaders = null;
+            // 재사용한 연결은 그 사이 WebServer가 닫았을 수 있으니 새 연결로 한 번 더 시도
+            for (int attempt = 0; responseHeaders == null && attempt < 2; attempt++) {
+                origin = upstream.acquire();
+                try {
+                    origin.send(request);
+                    // Content-Length / chunked 에 맞춰 body를 읽어야 연결을 다시 쓸 수 있음
+                    responseHeaders = origin.readResponseHead(64 * 1024);
+                } catch (IOException e) {
+                    if (!origin.isReused())
+                        throw e;
+                }
+                if (responseHeaders == null) {
+                    upstream.release(origin, false);
+                    origin = null;
                 }
             }
+            if (responseHeaders == null)
+                return null;
+            ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+            origin.body(responseHeaders).transferTo(responseBody);
+            upstream.release(origin, origin.canReuse(responseHeaders));
+            origin = null;
 
-            String lastModified = extractHeader(responseHeaders.toString(), "Last-Modified");
-            CachedPage newPage = new CachedPage(responseHeaders.toString(), responseBody.toByteArray(), lastModified);
+            String lastModified = extractHeader(responseHeaders, "Last-Modified");
+            CachedPage newPage = new CachedPage(responseHeaders, responseBody.toByteArray(), lastModified);
 
             cache.put(url, newPage);
             return newPage;
 
-        } catch (IOException e) {
+        } catch (IOException | NumberFormatException e) {
             e.printStackTrace();
+            if (origin != null)
+                upstream.release(origin, false);
         }
         return null;
     }
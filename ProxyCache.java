@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded LRU cache for {@link ProxyServer}. The total size of all entries and the number of
+ * entries are capped; the least recently used entries are evicted first. Entries stay available
+ * for revalidation for {@code staleRetentionMillis} after their max-age runs out and are dropped
+ * after that. Evicted entries can be handed to a second tier with {@link #setEvictionListener}.
+ *
+ * The cache holds a reference ({@link CachedPage#retain}) on every page it stores and releases it
+ * when the page is evicted, expired, invalidated or replaced.
+ */
+public class ProxyCache {
+    private final long maxBytes;
+    private final int maxEntries;
+    private final long staleRetentionMillis;
+
+    // accessOrder=true: get()이 순서를 바꾸므로 조회도 lock 안에서
+    private final LinkedHashMap<String, CachedPage> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long totalBytes = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private volatile BiConsumer<String, CachedPage> evictionListener;
+
+    public ProxyCache(long maxBytes, int maxEntries, long staleRetentionMillis) {
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.staleRetentionMillis = staleRetentionMillis;
+    }
+
+    /** Returns the entry for {@code url}, fresh or stale, or null on a miss. */
+    public CachedPage get(String url) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            CachedPage page = entries.get(url);
+            if (page != null && now - page.timestamp >= page.maxAgeMillis + staleRetentionMillis) {
+                remove(url, page);
+                expirations.increment();
+                page = null;
+            }
+            if (page == null) {
+                misses.increment();
+            } else {
+                hits.increment();
+            }
+            return page;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Called outside the lock with each entry evicted for space, not for expired or invalidated ones. */
+    public void setEvictionListener(BiConsumer<String, CachedPage> listener) {
+        this.evictionListener = listener;
+    }
+
+    public void put(String url, CachedPage page) {
+        long size = page.size();
+        if (size > maxBytes)
+            return;
+        if (!page.retain())
+            return;
+        List<Map.Entry<String, CachedPage>> evicted = new ArrayList<>();
+        CachedPage replaced = null;
+        lock.lock();
+        try {
+            CachedPage old = entries.put(url, page);
+            if (old == page) {
+                page.release();
+            } else if (old != null) {
+                replaced = old;
+            }
+            if (old != null)
+                totalBytes -= old.size();
+            totalBytes += size;
+            Iterator<Map.Entry<String, CachedPage>> it = entries.entrySet().iterator();
+            while ((totalBytes > maxBytes || entries.size() > maxEntries) && it.hasNext()) {
+                Map.Entry<String, CachedPage> eldest = it.next();
+                if (eldest.getValue() == page)
+                    continue;
+                it.remove();
+                totalBytes -= eldest.getValue().size();
+                evictions.increment();
+                evicted.add(Map.entry(eldest.getKey(), eldest.getValue()));
+            }
+        } finally {
+            lock.unlock();
+        }
+        // listener가 retain할 수 있도록 cache의 참조는 listener 호출 뒤에 놓음
+        BiConsumer<String, CachedPage> listener = evictionListener;
+        for (Map.Entry<String, CachedPage> e : evicted) {
+            if (listener != null)
+                listener.accept(e.getKey(), e.getValue());
+            e.getValue().release();
+        }
+        if (replaced != null)
+            replaced.release();
+    }
+
+    /** Swaps {@code expected} for {@code replacement} if {@code url} still maps to it. */
+    public void replace(String url, CachedPage expected, CachedPage replacement) {
+        lock.lock();
+        try {
+            if (!replacement.retain())
+                return;
+            if (entries.replace(url, expected, replacement)) {
+                totalBytes += replacement.size() - expected.size();
+                expected.release();
+            } else {
+                replacement.release();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes {@code url} only if it still maps to {@code page}. */
+    public void invalidate(String url, CachedPage page) {
+        lock.lock();
+        try {
+            remove(url, page);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String url, CachedPage page) {
+        if (entries.remove(url, page)) {
+            totalBytes -= page.size();
+            page.release();
+        }
+    }
+
+    /** Copy of the current entries, least recently used first. */
+    public List<Map.Entry<String, CachedPage>> snapshot() {
+        lock.lock();
+        try {
+            List<Map.Entry<String, CachedPage>> copy = new ArrayList<>(entries.size());
+            for (Map.Entry<String, CachedPage> e : entries.entrySet())
+                copy.add(Map.entry(e.getKey(), e.getValue()));
+            return copy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int entryCount() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long totalBytes() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long expirations() {
+        return expirations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "entries=" + entryCount() + " bytes=" + totalBytes() + " hits=" + hits() + " misses=" + misses()
+                + " evictions=" + evictions() + " expirations=" + expirations();
+    }
+}
@@ -1,26 +1,141 @@
 import java.io.*;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ProxyServer {
 
-    private static final int PROXY_PORT = 8085;
-    private static final String WEB_SERVER_HOST = "localhost";
-    private static final int WEB_SERVER_PORT = 8080;
+    // --port=, --origin=host:port 로 바꿀 수 있음
+    private static int proxyPort = 8085;
+    private static String webServerHost = "localhost";
+    private static int webServerPort = 8080;
     private static final int MAXAGE = 60;
 
     // Cache storage
-    private static final Map<String, CachedPage> cache = new HashMap<>();
+    // main()에서 옵션에 맞춰 만듦
+    private static ProxyCache cache;
+    // 같은 URL에 대한 동시 origin 요청을 하나로 합침
+    private static final SingleFlight<String, CachedPage> originFetches = new SingleFlight<>();
+    private static final LongAdder revalidated = new LongAdder();
+    private static final int MAX_RESPONSE_HEADER_SIZE = 64 * 1024;
+    // origin 응답 body를 캐시 항목에 채우는 작업
+    private static final ExecutorService bodyFillers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "proxy-body-fill");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final LongAdder revalidatedBytesSaved = new LongAdder();
+    // WebServer로의 keep-alive 연결 풀 (WebServer 기본 idle timeout 5초보다 짧게 유지)
+    private static UpstreamPool upstream;
+    // 선택적인 디스크 2차 캐시, --disk-cache=DIR 일 때만 사용
+    private static DiskCache disk;
+    // 이보다 큰 body는 메모리 대신 디스크에 두고 transferTo로 보냄
+    private static final long DISK_LARGE_BODY = 1024 * 1024;
+    // 캐시 body를 담는 off-heap 메모리, --offheap=off 이면 null (heap 사용)
+    private static SlabAllocator offHeap;
+    private static final ExecutorService diskWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "proxy-disk-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    // 만료된 항목을 클라이언트 요청과 별도로 다시 받아 오는 작업, URL당 하나만
+    private static final ExecutorService refreshers = Executors.newFixedThreadPool(4, r -> {
+        Thread t = new Thread(r, "proxy-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    // Vary: Accept-Encoding로 응답한 URL, 이 URL의 압축 variant는 cacheKey(url, encoding)에 따로 저장
+    private static final Set<String> variesByEncoding = ConcurrentHashMap.newKeySet();
+    private static final LongAdder backgroundRefreshes = new LongAdder();
+    // web server가 Cache-Control로 주지 않았을 때의 기본값
+    private static long staleWhileRevalidateMillis = 30 * 1000L;
+    private static long staleIfErrorMillis = 5 * 60 * 1000L;
+    // 유효 기간 중 이만큼 hit된 항목은 max-age 마지막 10% 구간에서 미리 갱신, 0이면 사용 안 함
+    private static int refreshAheadHits = 10;
+    // /__metrics, 캐시 결과별 요청 수/latency ("error"는 502)
+    private static final Metrics metrics = new Metrics("proxy", "cache", "hit", "miss", "stale", "revalidate",
+            "stale-if-error", "error");
 
     public static void main(String[] args) {
-        try (ServerSocket serverSocket = new ServerSocket(PROXY_PORT)) {
-            System.out.println("Proxy Server running on port " + PROXY_PORT);
+        long cacheMaxBytes = 256L * 1024 * 1024;
+        int cacheMaxEntries = 10_000;
+        int upstreamMaxConnections = 64;
+        long upstreamIdleTimeout = 4000;
+        int upstreamReadTimeout = UpstreamPool.DEFAULT_READ_TIMEOUT;
+        String diskDir = null;
+        long diskMaxBytes = 1024L * 1024 * 1024;
+        boolean useOffHeap = true;
+        String accessLog = null;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                proxyPort = Integer.parseInt(arg.substring(7));
+            } else if (arg.startsWith("--origin=")) {
+                String origin = arg.substring(9);
+                int colon = origin.lastIndexOf(':');
+                webServerHost = colon > 0 ? origin.substring(0, colon) : origin;
+                if (colon > 0)
+                    webServerPort = Integer.parseInt(origin.substring(colon + 1));
+            } else if (arg.startsWith("--cache-max-bytes=")) {
+                cacheMaxBytes = Long.parseLong(arg.substring(18));
+            } else if (arg.startsWith("--cache-max-entries=")) {
+                cacheMaxEntries = Integer.parseInt(arg.substring(20));
+            } else if (arg.startsWith("--upstream-max-connections=")) {
+                upstreamMaxConnections = Integer.parseInt(arg.substring(27));
+            } else if (arg.startsWith("--upstream-idle-timeout=")) {
+                upstreamIdleTimeout = Long.parseLong(arg.substring(24));
+            } else if (arg.startsWith("--upstream-read-timeout=")) {
+                upstreamReadTimeout = Integer.parseInt(arg.substring(24));
+            } else if (arg.startsWith("--disk-cache=")) {
+                diskDir = arg.substring(13);
+            } else if (arg.startsWith("--disk-cache-max-bytes=")) {
+                diskMaxBytes = Long.parseLong(arg.substring(23));
+            } else if (arg.startsWith("--offheap=")) {
+                useOffHeap = !arg.substring(10).equals("off");
+            } else if (arg.startsWith("--stale-while-revalidate=")) {
+                staleWhileRevalidateMillis = Long.parseLong(arg.substring(25)) * 1000;
+            } else if (arg.startsWith("--stale-if-error=")) {
+                staleIfErrorMillis = Long.parseLong(arg.substring(17)) * 1000;
+            } else if (arg.startsWith("--refresh-ahead-hits=")) {
+                refreshAheadHits = Integer.parseInt(arg.substring(21));
+            } else if (arg.startsWith("--log-level=")) {
+                Log.setLevel(arg.substring(12));
+            } else if (arg.startsWith("--access-log=")) {
+                accessLog = arg.substring(13);
+            }
+        }
+        cache = new ProxyCache(cacheMaxBytes, cacheMaxEntries, 10 * 60 * 1000L);
+        // size class 올림 때문에 캐시 한도의 두 배까지 잡을 수 있게 함
+        offHeap = useOffHeap ? new SlabAllocator(cacheMaxBytes * 2) : null;
+        upstream = new UpstreamPool(webServerHost, webServerPort, upstreamMaxConnections, upstreamIdleTimeout,
+                upstreamReadTimeout);
+        registerMetrics();
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            if (accessLog != null)
+                Log.setAccessLog(accessLog);
+            if (diskDir != null) {
+                disk = DiskCache.open(Paths.get(diskDir), diskMaxBytes, 10 * 60 * 1000L);
+                // 메모리에서 밀려난 항목은 디스크로
+                cache.setEvictionListener(ProxyServer::spillToDisk);
+                disk.setDropListener(ProxyServer::forgetSegment);
+                Runtime.getRuntime().addShutdownHook(new Thread(ProxyServer::flushToDisk, "proxy-disk-flush"));
+            }
+            serverChannel.bind(new InetSocketAddress(proxyPort));
+            Log.info("Proxy Server running on port {}, web server {}:{}", proxyPort, webServerHost, webServerPort);
 
             while (true) {
-                Socket clientSocket = serverSocket.accept();
+                Socket clientSocket = serverChannel.accept().socket();
                 new Thread(() -> handleClientRequest(clientSocket)).start();
             }
         } catch (IOException e) {
@@ -28,216 +143,450 @@ public class ProxyServer {
         }
     }
 
+    private static void registerMetrics() {
+        metrics.counter("cache_hits_total", "Lookups that found an entry, fresh or stale.", () -> cache.hits());
+        metrics.counter("cache_misses_total", "Lookups that found no entry.", () -> cache.misses());
+        metrics.counter("cache_evictions_total", "Entries evicted to stay within the size limits.",
+                () -> cache.evictions());
+        metrics.counter("cache_expirations_total", "Entries dropped after max-age plus stale retention.",
+                () -> cache.expirations());
+        metrics.counter("revalidations_total", "Conditional requests answered with 304 Not Modified.",
+                revalidated::sum);
+        metrics.counter("revalidated_bytes_saved_total", "Body bytes not transferred thanks to 304 responses.",
+                revalidatedBytesSaved::sum);
+        metrics.counter("background_refreshes_total", "Revalidations done off the request path.",
+                backgroundRefreshes::sum);
+        metrics.counter("origin_fetches_total", "Requests sent to the web server.", originFetches::loads);
+        metrics.counter("origin_fetches_coalesced_total", "Requests that shared another request's origin fetch.",
+                originFetches::coalesced);
+        metrics.gauge("cache_entries", "Entries in the memory cache.", () -> cache.entryCount());
+        metrics.gauge("cache_bytes", "Size of the entries in the memory cache.", () -> cache.totalBytes());
+        metrics.gauge("offheap_used_bytes", "Off-heap memory holding cached bodies.",
+                () -> offHeap != null ? offHeap.usedBytes() : 0);
+        metrics.gauge("disk_cache_entries", "Entries in the disk cache.", () -> disk != null ? disk.entryCount() : 0);
+        metrics.gauge("upstream_idle_connections", "Idle keep-alive connections to the web server.",
+                () -> upstream.idleCount());
+        metrics.counter("log_dropped_total", "Log messages dropped because the log buffer was full.", Log::dropped);
+    }
+
     private static void handleClientRequest(Socket clientSocket) {
-        try (
-                BufferedReader clientIn = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                OutputStream clientOut = clientSocket.getOutputStream()) {
-            String requestLine = clientIn.readLine();
-            if (requestLine == null || !requestLine.startsWith("GET")) {
+        metrics.connectionOpened();
+        try (ChannelOutputStream clientOut = new ChannelOutputStream(clientSocket.getChannel())) {
+            HttpRequestParser request = new HttpRequestParser();
+            boolean received;
+            try {
+                received = request.readFrom(clientSocket.getInputStream());
+            } catch (HttpRequestParser.ParseException e) {
+                clientOut.write(e.response());
+                return;
+            }
+            long start = System.nanoTime();
+            if (!received || !request.method().equals("GET")) {
                 sendErrorResponse(clientOut, 400, "Bad Request");
+                if (received)
+                    WebServer.logAccess(request.method(), request.target(), 400, clientOut.bytesWritten(), start);
+                return;
+            }
+
+            String url = request.target();
+            Log.debug("[Proxy] Received request for: {}", url);
+            if (url.equals(Metrics.PATH)) {
+                sendMetrics(clientOut);
                 return;
             }
 
-            String[] requestParts = requestLine.split(" ");
-            String url = requestParts[1];
-            System.out.println("url : " + url);
-            System.out.println("[Proxy] Received request for: " + url);
-
-            if (cache.containsKey(url)) {
-                CachedPage cachedPage = cache.get(url);
-                long currentTime = System.currentTimeMillis();
-                long maxAgeMillis = MAXAGE * 1000;
-                String cacheControl = extractHeader(cachedPage.headers, "Cache-Control");
-                if (cacheControl != null && cacheControl.contains("max-age")) {
-                    String[] directives = cacheControl.split(",");
-                    for (String directive : directives) {
-                        directive = directive.trim();
-                        if (directive.startsWith("max-age=")) {
-                            String maxAgeValue = directive.substring(8);
-                            maxAgeMillis = Long.parseLong(maxAgeValue) * 1000;
-                            break;
-                        }
-                    }
+            String encoding = ContentEncoding.negotiate(request.header("Accept-Encoding"));
+            String key = cacheKey(url, variesByEncoding.contains(url) ? encoding : null);
+            CachedPage cachedPage = lookup(key);
+            if (cachedPage != null && cachedPage.variesByEncoding && encoding != null && key.equals(url)) {
+                // 재시작 후 디스크에서 읽은 항목처럼 아직 Vary를 모르던 URL
+                variesByEncoding.add(url);
+                key = cacheKey(url, encoding);
+                cachedPage = lookup(key);
+            }
+            long now = System.currentTimeMillis();
+            // access log의 cache= 값
+            String outcome;
+            if (cachedPage == null) {
+                Log.debug("[Proxy] Cache miss for: {}", url);
+                outcome = "miss";
+                cachedPage = fetchCoalesced(url, encoding, null);
+            } else if (cachedPage.isFresh(now)) {
+                Log.debug("[Proxy] Cache is valid for: {}", url);
+                outcome = "hit";
+                refreshAheadIfHot(url, encoding, cachedPage, now);
+            } else if (cachedPage.isWithinStaleWindow(now, staleWhileRevalidate(cachedPage))) {
+                // 기다리지 않고 stale 항목을 보내고 갱신은 뒤에서
+                Log.debug("[Proxy] Cache stale, serving while revalidating: {}", url);
+                outcome = "stale";
+                refreshInBackground(url, encoding, cachedPage);
+            } else {
+                Log.debug("[Proxy] Cache expired, revalidating: {}", url);
+                outcome = "revalidate";
+                CachedPage stale = cachedPage;
+                cachedPage = fetchCoalesced(url, encoding, stale);
+                if (cachedPage == null && stale.isWithinStaleWindow(now, staleIfError(stale))) {
+                    Log.warn("[Proxy] Web server failed, serving stale page for: {}", url);
+                    outcome = "stale-if-error";
+                    cachedPage = stale;
                 }
-                if (currentTime - cachedPage.timestamp < maxAgeMillis) {
-                    System.out.println("[Proxy] Cache is valid for: " + url);
-
-                    String ifModifiedSince = cachedPage.lastModified;
-                    boolean isModified = forwardRequestToServer(clientSocket, url, ifModifiedSince);
-                    isModified = false;
-                    if (!isModified) {
-                        System.out.println("[Proxy] Resource not modified. Serving cached page for: " + url);
-                        sendCachedResponse(clientOut, cachedPage);
-                    } else {
-                        System.out.println("[Proxy] Resource modified. Updating cache for: " + url);
-                        CachedPage updatedPage = fetchAndCachePage(url);
-                        sendCachedResponse(clientOut, updatedPage);
-                    }
+            }
+            if (cachedPage != null && !cachedPage.retain()) {
+                // 조회 직후 evict되어 body가 이미 반납된 경우, origin에서 다시 받음
+                cachedPage = fetchCoalesced(url, encoding, null);
+                if (cachedPage != null && !cachedPage.retain())
+                    cachedPage = null;
+            }
+            if (cachedPage == null) {
+                sendErrorResponse(clientOut, 502, "Bad Gateway");
+                metrics.record("error", clientOut.bytesWritten(), System.nanoTime() - start);
+                Log.access("GET", url, 502, clientOut.bytesWritten(), start, "cache=" + outcome);
+                return;
+            }
+            try {
+                int status = cachedPage.status;
+                List<HttpRange> ranges = null;
+                // Range는 다 받아 둔 body에서만 잘라서 보냄, 아직 채우는 중이면 전체를 보냄
+                if (request.header("Range") != null && cachedPage.canServeRanges())
+                    ranges = HttpRange.requested(request.headers(), cachedPage.bodyLength(), cachedPage.etag,
+                            cachedPage.lastModifiedMillis < 0 ? -1 : cachedPage.lastModifiedMillis / 1000);
+                if (ranges != null) {
+                    status = cachedPage.writeRangesTo(clientOut, ranges);
+                    clientOut.flush();
                 } else {
-                    System.out.println("[Proxy] Cache expired for: " + url);
-                    CachedPage updatedPage = fetchAndCachePage(url);
-                    sendCachedResponse(clientOut, updatedPage);
+                    sendCachedResponse(clientOut, cachedPage);
                 }
-            } else {
-                System.out.println("[Proxy] Cache miss for: " + url);
-                CachedPage newPage = fetchAndCachePage(url);
-                sendCachedResponse(clientOut, newPage);
+                metrics.record(outcome, clientOut.bytesWritten(), System.nanoTime() - start);
+                Log.access("GET", url, status, clientOut.bytesWritten(), start, "cache=" + outcome);
+            } finally {
+                cachedPage.release();
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.warn("[Proxy] Client request failed: {}", e.toString());
         } finally {
+            metrics.connectionClosed();
             try {
                 clientSocket.close();
-                System.out.println("[Proxy] Closed client socket.");
             } catch (IOException e) {
-                System.err.println("[ERROR] Failed to close client socket: " + e.getMessage());
+                Log.warn("[ERROR] Failed to close client socket: {}", e.getMessage());
             }
         }
     }
 
     private static void sendCachedResponse(OutputStream clientOut, CachedPage cachedPage) throws IOException {
-        System.out.println("[Proxy] Serving cached page");
-        String headersWithCache = addCacheHeaders(cachedPage.headers);
-
         try {
-            System.out.println("[DEBUG] Writing headers to clientOut...");
-            clientOut.write(headersWithCache.getBytes(StandardCharsets.UTF_8));
-            clientOut.write(cachedPage.body);
+            // 미리 만들어 둔 응답 헤더 bytes + body
+            cachedPage.writeTo(clientOut);
             clientOut.flush();
-            System.out.println("[Proxy] Cached page served successfully.");
         } catch (IOException e) {
-            System.err.println("[ERROR] Failed to send cached response: " + e.getMessage());
+            Log.warn("[ERROR] Failed to send cached response: {}", e.getMessage());
             throw e;
         }
     }
 
-    private static int findHeaderEnd(byte[] rawResponseBytes) {
-        for (int i = 0; i < rawResponseBytes.length - 3; i++) {
-            if (rawResponseBytes[i] == '\r' && rawResponseBytes[i + 1] == '\n' &&
-                    rawResponseBytes[i + 2] == '\r' && rawResponseBytes[i + 3] == '\n') {
-                return i + 4; // Position after the "\r\n\r\n"
-            }
-        }
-        return -1; // End of headers not found
+    /** The memory cache and then the disk cache. */
+    private static CachedPage lookup(String key) {
+        CachedPage page = cache.get(key);
+        if (page == null && disk != null)
+            page = loadFromDisk(key);
+        return page;
     }
 
-    private static CachedPage fetchAndCachePage(String url) {
-        try (Socket serverSocket = new Socket(WEB_SERVER_HOST, WEB_SERVER_PORT);
-                InputStream serverInputStream = serverSocket.getInputStream();
-                OutputStream serverOut = serverSocket.getOutputStream()) {
+    /**
+     * The cache key of {@code url} for a client that accepts {@code encoding}. Responses that vary
+     * by Accept-Encoding are stored per negotiated coding; everything else under the URL alone,
+     * so e.g. pictures are stored once whatever the client accepts.
+     */
+    static String cacheKey(String url, String encoding) {
+        // 공백은 request target에 들어갈 수 없으므로 URL과 겹치지 않음
+        return encoding == null ? url : url + " " + encoding;
+    }
 
-            // Send new request to WebServer
-            String request = "GET " + url + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
-            serverOut.write(request.getBytes(StandardCharsets.ISO_8859_1));
-            serverOut.flush();
+    /**
+     * Fetches {@code url} from the web server unless another thread is already fetching it for the
+     * same coding, in which case the result of that fetch is shared.
+     */
+    private static CachedPage fetchCoalesced(String url, String encoding, CachedPage stale) {
+        CachedPage page = originFetches.load(cacheKey(url, encoding), k -> fetchAndCachePage(url, encoding, stale));
+        Log.debug("[Proxy] Origin fetches: {}, saved by coalescing: {}", originFetches.loads(), originFetches.coalesced());
+        return page;
+    }
 
-            // Read response from server
-            ByteArrayOutputStream rawResponse = new ByteArrayOutputStream();
-            byte[] buffer = new byte[8192];
-            int bytesRead;
+    private static long staleWhileRevalidate(CachedPage page) {
+        return page.staleWhileRevalidateMillis >= 0 ? page.staleWhileRevalidateMillis : staleWhileRevalidateMillis;
+    }
 
-            while ((bytesRead = serverInputStream.read(buffer)) != -1) {
-                rawResponse.write(buffer, 0, bytesRead);
-            }
+    private static long staleIfError(CachedPage page) {
+        return page.staleIfErrorMillis >= 0 ? page.staleIfErrorMillis : staleIfErrorMillis;
+    }
 
-            // Convert raw response to byte array
-            byte[] rawResponseBytes = rawResponse.toByteArray();
+    /** Refreshes a frequently hit page shortly before it expires, so its clients never see it stale. */
+    private static void refreshAheadIfHot(String url, String encoding, CachedPage page, long now) {
+        int hits = page.recordHit();
+        if (refreshAheadHits <= 0 || hits < refreshAheadHits)
+            return;
+        if (page.timestamp + page.maxAgeMillis - now <= page.maxAgeMillis / 10)
+            refreshInBackground(url, encoding, page);
+    }
 
-            // Find the end of headers
-            int headerEndIndex = findHeaderEnd(rawResponseBytes);
+    /** Revalidates {@code stale} on a refresh thread unless a refresh of it is already queued. */
+    private static void refreshInBackground(String url, String encoding, CachedPage stale) {
+        // cache 항목과 같은 key: encoding별로 저장된 항목만 encoding마다 따로 갱신
+        String key = stale.variesByEncoding ? cacheKey(url, encoding) : url;
+        if (!refreshing.add(key))
+            return;
+        try {
+            refreshers.execute(() -> {
+                try {
+                    if (fetchCoalesced(url, encoding, stale) == null)
+                        Log.warn("[Proxy] Background revalidation failed for: {}", url);
+                    backgroundRefreshes.increment();
+                    Log.debug("[Proxy] Refreshed in background: {} ({} background refreshes)", url,
+                            backgroundRefreshes.sum());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
 
-            if (headerEndIndex == -1) {
-                System.err.println("[Proxy] Failed to parse response from WebServer.");
+    /**
+     * Fetches {@code url} from the web server and stores it in the cache. When a stale entry with a
+     * Last-Modified date is given, the request is conditional: a 304 only renews the stale entry's
+     * freshness, a 200 replaces it. A 5xx is not cached over a stale entry; null is returned so
+     * the caller can serve the stale entry instead (stale-if-error).
+     *
+     * The request carries the client's negotiated {@code encoding}. A response with Vary:
+     * Accept-Encoding is stored under {@link #cacheKey} for that coding, any other under the URL.
+     *
+     * Returns as soon as the response headers are in. The body is copied into the page by a
+     * background task while clients already stream from it. The origin connection comes from
+     * {@link #upstream} and goes back to it once the body has been read.
+     */
+    private static CachedPage fetchAndCachePage(String url, String encoding, CachedPage stale) {
+        String ifModifiedSince = stale != null ? stale.lastModified : null;
+        String request = "GET " + url + " HTTP/1.1\r\nHost: " + webServerHost + "\r\n" +
+                (encoding != null ? "Accept-Encoding: " + encoding + "\r\n" : "") +
+                (ifModifiedSince != null ? "If-Modified-Since: " + ifModifiedSince + "\r\n" : "") +
+                "Connection: keep-alive\r\n\r\n";
+
+        UpstreamPool.Connection origin = null;
+        try {
+            String headersString = null;
+            // 재사용한 연결은 그 사이 WebServer가 닫았을 수 있으니 새 연결로 한 번 더 시도
+            for (int attempt = 0; headersString == null && attempt < 2; attempt++) {
+                origin = upstream.acquire();
+                try {
+                    origin.send(request);
+                    headersString = origin.readResponseHead(MAX_RESPONSE_HEADER_SIZE);
+                } catch (IOException e) {
+                    if (!origin.isReused())
+                        throw e;
+                }
+                if (headersString == null) {
+                    upstream.release(origin, false);
+                    origin = null;
+                }
+            }
+            if (headersString == null) {
+                Log.warn("[Proxy] Failed to parse response from WebServer for: {}", url);
                 return null;
             }
 
-            // Extract headers and body
-            String headersString = new String(rawResponseBytes, 0, headerEndIndex, StandardCharsets.ISO_8859_1);
-            byte[] responseBody = Arrays.copyOfRange(rawResponseBytes, headerEndIndex, rawResponseBytes.length);
+            InputStream body = origin.body(headersString);
+            boolean reusable = origin.canReuse(headersString);
+            if (stale != null && headersString.startsWith("HTTP/1.1 304")) {
+                upstream.release(origin, reusable);
+                // 본문 전송 없이 기존 항목의 유효 시간만 갱신
+                stale.revalidated(System.currentTimeMillis());
+                cache.put(stale.variesByEncoding ? cacheKey(url, encoding) : url, stale);
+                revalidated.increment();
+                revalidatedBytesSaved.add(stale.bodyLength());
+                Log.debug("[Proxy] Resource not modified: {} ({} revalidations, {} body bytes saved)", url,
+                        revalidated.sum(), revalidatedBytesSaved.sum());
+                return stale;
+            }
+            if (stale != null && headersString.startsWith("HTTP/1.1 5")) {
+                // body는 읽지 않으므로 연결은 재사용하지 않음
+                upstream.release(origin, false);
+                Log.warn("[Proxy] WebServer error for {}: {}", url,
+                        headersString.substring(0, headersString.indexOf("\r\n")));
+                return null;
+            }
 
             // Extract Last-Modified header
             String lastModified = extractHeader(headersString, "Last-Modified");
+            String contentLength = extractHeader(headersString, "Content-Length");
+            int expectedLength = contentLength != null && extractHeader(headersString, "Transfer-Encoding") == null
+                    ? Integer.parseInt(contentLength) : -1;
+            // chunked 응답은 디코딩해서 저장하므로 길이는 다 받은 뒤 fillBody에서 붙임
+            if (expectedLength < 0)
+                headersString = UpstreamPool.withoutFraming(headersString);
+
+            // Create CachedPage object, body follows
+            CachedPage newPage = new CachedPage(headersString, expectedLength, lastModified, MAXAGE * 1000L, offHeap);
+            String key = url;
+            if (newPage.variesByEncoding) {
+                variesByEncoding.add(url);
+                key = cacheKey(url, encoding);
+            }
 
-            // Create CachedPage object
-            CachedPage newPage = new CachedPage(headersString, responseBody, lastModified);
-
-            // Store in cache
-            cache.put(url, newPage);
-            System.out.println("[Proxy] Cached page for: " + url);
-
+            // 길이를 알면 바로 캐시에 넣어 다른 요청도 채워지는 중에 읽을 수 있게 함
+            if (expectedLength >= 0)
+                cache.put(key, newPage);
+            UpstreamPool.Connection conn = origin;
+            String storedAs = key;
+            bodyFillers.execute(() -> fillBody(storedAs, newPage, conn, body, reusable));
             return newPage;
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        } catch (IOException | NumberFormatException e) {
+            Log.warn("[Proxy] Fetching {} from WebServer failed: {}", url, e.toString());
+            if (origin != null)
+                upstream.release(origin, false);
         }
         return null;
     }
 
-    private static boolean forwardRequestToServer(Socket clientSocket, String url, String ifModifiedSince) {
-        try (Socket serverSocket = new Socket(WEB_SERVER_HOST, WEB_SERVER_PORT);
-                BufferedReader serverIn = new BufferedReader(new InputStreamReader(serverSocket.getInputStream()));
-                OutputStream serverOut = serverSocket.getOutputStream();
-                OutputStream clientOut = clientSocket.getOutputStream()) {
-
-            // WebServer에 요청 전송
-            StringBuilder request = new StringBuilder();
-            request.append("GET ").append(url).append(" HTTP/1.1\r\n");
-            request.append("Host: ").append(WEB_SERVER_HOST).append("\r\n");
-            if (ifModifiedSince != null) {
-                request.append("If-Modified-Since: ").append(ifModifiedSince).append("\r\n");
-            }
-            request.append("Connection: close\r\n\r\n");
-            serverOut.write(request.toString().getBytes());
-            serverOut.flush();
-
-            // WebServer 응답 처리
-            String responseLine = serverIn.readLine();
-            System.out.println("[Proxy] Received response from WebServer: " + responseLine);
-
-            if (responseLine.startsWith("HTTP/1.1 304 Not Modified")) {
-                return false; // 리소스 변경되지 않음
+    /** Copies the body into {@code page}, stored in the cache under {@code key}. */
+    private static void fillBody(String key, CachedPage page, UpstreamPool.Connection origin, InputStream in,
+            boolean reusable) {
+        boolean complete = false;
+        try {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                page.append(buffer, 0, bytesRead);
             }
+            complete = true;
+            // 길이를 몰랐던 응답은 다 받은 뒤에 Content-Length를 붙여 캐시에 넣음
+            boolean lengthKnown = page.contentLength >= 0;
+            if (!lengthKnown)
+                page.setHeaders(page.headers() + "Content-Length: " + page.filledLength() + "\r\n");
+            page.finish();
+            if (!lengthKnown)
+                cache.put(key, page);
+            if (disk != null && page.bodyLength() >= DISK_LARGE_BODY)
+                writeToDisk(page, () -> moveToDisk(key, page));
+            if (Log.isDebugEnabled())
+                Log.debug("[Proxy] Cached page for: {} ({})", key, cache + (offHeap != null ? " " + offHeap : ""));
+        } catch (IOException e) {
+            Log.warn("[ERROR] Failed to read body for {}: {}", key, e.getMessage());
+            page.fail(e);
+            cache.invalidate(key, page);
+        } finally {
+            upstream.release(origin, complete && reusable);
+            // fetchAndCachePage가 만든 참조, 이후는 cache와 전송 중인 요청이 잡고 있음
+            page.release();
+        }
+    }
 
-            // 응답 헤더 및 본문 처리
-            StringBuilder responseHeaders = new StringBuilder();
-            ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
-            boolean headersEnded = false;
-            String line;
-            while ((line = serverIn.readLine()) != null) {
-                if (!headersEnded) {
-                    responseHeaders.append(line).append("\r\n");
-                    if (line.isEmpty())
-                        headersEnded = true;
-                } else {
-                    responseBody.write(line.getBytes());
-                }
+    /**
+     * Looks {@code url} up in the disk tier and puts it back in memory. Small bodies are read into
+     * the heap; large ones stay on disk and are sent from the segment file.
+     */
+    private static CachedPage loadFromDisk(String url) {
+        DiskCache.Entry entry = disk.get(url);
+        if (entry == null)
+            return null;
+        CachedPage page = new CachedPage(entry);
+        if (entry.body.length < DISK_LARGE_BODY) {
+            try {
+                page = new CachedPage(entry.headers, entry.body.read(), entry.lastModified, entry.maxAgeMillis,
+                        offHeap);
+                page.timestamp = entry.timestamp;
+            } catch (IOException e) {
+                Log.warn("[ERROR] Failed to read {} from disk cache: {}", url, e.getMessage());
+                disk.invalidate(url);
+                return null;
             }
+        }
+        Log.debug("[Proxy] Disk cache hit for: {}", url);
+        cache.put(url, page);
+        page.release();
+        return page;
+    }
 
-            // 새로운 응답을 캐시에 저장
-            String lastModified = extractHeader(responseHeaders.toString(), "Last-Modified");
-            cache.put(url, new CachedPage(responseHeaders.toString(), responseBody.toByteArray(), lastModified));
-            System.out.println("[Proxy] Cached updated page for: " + url);
+    private static void spillToDisk(String url, CachedPage page) {
+        if (page.region != null || !page.isComplete())
+            return;
+        writeToDisk(page, () -> disk.put(url, page.headers(), page.lastModified, page.timestamp, page.maxAgeMillis,
+                page.bodyBuffer()));
+    }
 
-            // 클라이언트로 응답 전달
-            clientOut.write(responseHeaders.toString().getBytes());
-            clientOut.write(responseBody.toByteArray());
-            clientOut.flush();
-            return true;
+    /** Runs {@code write} on the disk writer while holding a reference so the body is not freed under it. */
+    private static void writeToDisk(CachedPage page, Runnable write) {
+        if (!page.retain())
+            return;
+        try {
+            diskWriter.execute(() -> {
+                try {
+                    write.run();
+                } finally {
+                    page.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 종료 중: flushToDisk가 남은 항목을 씀
+            page.release();
+        }
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+    /** Saves what is still only in memory so the next start is warm. */
+    private static void flushToDisk() {
+        diskWriter.shutdown();
+        try {
+            diskWriter.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return;
         }
+        int saved = 0;
+        for (Map.Entry<String, CachedPage> e : cache.snapshot()) {
+            CachedPage page = e.getValue();
+            if (page.region != null || !page.isComplete() || !page.retain())
+                continue;
+            try {
+                if (disk.put(e.getKey(), page.headers(), page.lastModified, page.timestamp, page.maxAgeMillis,
+                        page.bodyBuffer()) != null)
+                    saved++;
+            } finally {
+                page.release();
+            }
+        }
+        Log.info("[Proxy] Saved {} cached pages to disk ({})", saved, disk);
     }
 
-    private static String addCacheHeaders(String originalHeaders) {
-        StringBuilder headers = new StringBuilder(originalHeaders);
+    /** Drops the memory entries whose body was in a segment the disk cache just deleted. */
+    private static void forgetSegment(Path file) {
+        for (Map.Entry<String, CachedPage> e : cache.snapshot()) {
+            CachedPage page = e.getValue();
+            if (page.region != null && page.region.file.equals(file))
+                cache.invalidate(e.getKey(), page);
+        }
+    }
 
-        if (!originalHeaders.contains("Cache-Control")) {
-            headers.append("Cache-Control: max-age=" + MAXAGE + "\r\n");
+    /** Writes a large page to disk and swaps the in-memory copy for one that reads from there. */
+    private static void moveToDisk(String url, CachedPage page) {
+        DiskCache.Entry entry = disk.put(url, page.headers(), page.lastModified, page.timestamp, page.maxAgeMillis,
+                page.bodyBuffer());
+        if (entry != null) {
+            CachedPage onDisk = new CachedPage(entry);
+            cache.replace(url, page, onDisk);
+            onDisk.release();
         }
-        headers.append("\r\n");
-        return headers.toString();
+    }
+
+    private static void sendMetrics(OutputStream clientOut) throws IOException {
+        byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+        String header = "HTTP/1.1 200 OK\r\n" +
+                "Content-Type: text/plain; version=0.0.4\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                "Cache-Control: no-store\r\n" +
+                "Connection: close\r\n\r\n";
+        clientOut.write(header.getBytes(StandardCharsets.ISO_8859_1));
+        clientOut.write(body);
+        clientOut.flush();
     }
 
     private static void sendErrorResponse(OutputStream clientOut, int statusCode, String message) throws IOException {
@@ -245,7 +594,7 @@ public class ProxyServer {
         clientOut.write(response.getBytes());
     }
 
-    private static String extractHeader(String headers, String headerName) {
+    static String extractHeader(String headers, String headerName) {
         String[] lines = headers.split("\r\n");
         for (String line : lines) {
             int colonIndex = line.indexOf(":");
@@ -259,24 +608,4 @@ public class ProxyServer {
         return null;
     }
 
-    private static String getCurrentTime() {
-        SimpleDateFormat formatter = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH);
-        formatter.setTimeZone(TimeZone.getTimeZone("GMT"));
-        return formatter.format(new Date());
-    }
-
-    private static class CachedPage {
-        String headers;
-        byte[] body;
-        long timestamp;
-        String lastModified;
-
-        CachedPage(String headers, byte[] body, String lastModified) {
-            this.headers = headers;
-            this.body = body;
-            this.lastModified = lastModified;
-            this.timestamp = System.currentTimeMillis();
-        }
-    }
-
 }
@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Fully rendered response bodies keyed by request path, each with its compressed variants once a
+ * client has asked for them. The whole cache is dropped when the
+ * modification time of any source file (templates, destinations.json) changes; source files are
+ * checked at most once per {@code checkIntervalMillis}. At most {@link #MAX_ENTRIES} pages are kept;
+ * the least recently used one is evicted when another is added.
+ */
+public class ResponseCache {
+    private static final int MAX_ENTRIES = 1024;
+
+    public interface Loader {
+        Page load() throws IOException;
+    }
+
+    /** Pre-encoded response: everything except the per-user headers. */
+    public static class Page {
+        final byte[] headerPrefix;
+        final byte[] body;
+        final String lastModified;
+        // If-Modified-Since 비교용, lastModified가 없으면 -1
+        final long lastModifiedSeconds;
+        final String etag;
+        final String contentType;
+        long generation;
+        // content coding -> 압축된 Page, 원본과 함께 캐시에서 빠짐
+        private final Map<String, Page> variants = new ConcurrentHashMap<>(2);
+
+        public Page(byte[] headerPrefix, byte[] body, String contentType, String lastModified, long lastModifiedSeconds,
+                String etag) {
+            this.headerPrefix = headerPrefix;
+            this.body = body;
+            this.contentType = contentType;
+            this.lastModified = lastModified;
+            this.lastModifiedSeconds = lastModifiedSeconds;
+            this.etag = etag;
+        }
+
+        /** The {@code encoding} variant of this page, built with {@code encoder} on first use. */
+        public Page variant(String encoding, Function<Page, Page> encoder) {
+            return variants.computeIfAbsent(encoding, e -> encoder.apply(this));
+        }
+    }
+
+    // accessOrder=true: ProxyCache처럼 조회도 순서를 바꾸므로 lock 안에서
+    private final LinkedHashMap<String, Page> pages = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Page> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Path[] sources;
+    private final long[] sourceTimes;
+    private final long checkIntervalMillis;
+    private volatile long generation = 0;
+    private volatile long lastCheck = 0;
+    private Runnable onChange = null;
+
+    public ResponseCache(long checkIntervalMillis, Path... sources) {
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.sources = sources;
+        this.sourceTimes = new long[sources.length];
+        checkSources();
+    }
+
+    /**
+     * Returns the cached page for {@code key}, rendering it with {@code loader} on a miss.
+     * A loader returning null (e.g. missing template) is not cached.
+     */
+    public Page get(String key, Loader loader) throws IOException {
+        if (System.currentTimeMillis() - lastCheck > checkIntervalMillis)
+            checkSources();
+        long current = generation;
+        Page page;
+        lock.lock();
+        try {
+            page = pages.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (page != null && page.generation == current)
+            return page;
+
+        // 렌더링은 lock 밖에서
+        page = loader.load();
+        if (page != null) {
+            page.generation = current;
+            lock.lock();
+            try {
+                // 렌더링하는 사이 캐시가 비워졌으면 넣지 않음
+                if (generation == current)
+                    pages.put(key, page);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return page;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return pages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Called after the cache was dropped because a source file changed. */
+    public void setOnChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    public void clear() {
+        synchronized (this) {
+            generation++;
+            clearPages();
+        }
+    }
+
+    private synchronized void checkSources() {
+        lastCheck = System.currentTimeMillis();
+        boolean changed = false;
+        for (int i = 0; i < sources.length; i++) {
+            long time;
+            try {
+                time = Files.getLastModifiedTime(sources[i]).toMillis();
+            } catch (IOException e) {
+                time = -1;
+            }
+            if (time != sourceTimes[i]) {
+                sourceTimes[i] = time;
+                changed = true;
+            }
+        }
+        if (changed) {
+            if (onChange != null)
+                onChange.run();
+            generation++;
+            clearPages();
+        }
+    }
+
+    private void clearPages() {
+        lock.lock();
+        try {
+            pages.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
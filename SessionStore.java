@@ -0,0 +1,282 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The last location of each UserId cookie, for the redirect from "/" to where the user was.
+ *
+ * Sessions are spread over {@link #SHARDS} shards, each an access-ordered map under its own lock
+ * like {@link ProxyCache}, so handler threads rarely wait for each other. A session expires after
+ * {@code idleTtlMillis} without being read or written, and each shard holds at most its share of
+ * {@code maxSessions}; the least recently used sessions go first. Expired sessions are dropped
+ * from the old end of a shard whenever a session is stored in it.
+ *
+ * Storage is compact: UserIds are the numbers {@link WebServer} mints and are kept as longs, and
+ * the locations, a small set of category and destination slugs, are interned and stored as a
+ * byte index. A cookie that is not a number is not remembered.
+ *
+ * {@link #save} and {@link #load} keep the sessions across a restart.
+ */
+public class SessionStore {
+    static final int SHARDS = 16;
+    // location 표는 byte index로 가리키므로 최대 256개
+    static final int MAX_LOCATIONS = 256;
+    private static final int MAGIC = 0x53455331; // "SES1"
+
+    private static class Session {
+        byte location;
+        long lastAccess;
+
+        Session(byte location, long lastAccess) {
+            this.location = location;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        // accessOrder=true: 가장 오래 안 쓴 session이 앞쪽
+        final LinkedHashMap<Long, Session> sessions = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final int maxPerShard;
+    private final long idleTtlMillis;
+
+    private final Map<String, Byte> locationIndex = new ConcurrentHashMap<>();
+    private volatile String[] locations = new String[0];
+
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public SessionStore(int maxSessions, long idleTtlMillis) {
+        for (int i = 0; i < SHARDS; i++)
+            shards[i] = new Shard();
+        this.maxPerShard = Math.max(1, (maxSessions + SHARDS - 1) / SHARDS);
+        this.idleTtlMillis = idleTtlMillis;
+    }
+
+    /** The last location stored for {@code userId}, or null if there is none or it expired. */
+    public String get(String userId) {
+        long id = parseId(userId);
+        if (id < 0)
+            return null;
+        Shard shard = shard(id);
+        long now = System.currentTimeMillis();
+        int index;
+        shard.lock.lock();
+        try {
+            Session session = shard.sessions.get(id);
+            if (session == null)
+                return null;
+            if (now - session.lastAccess > idleTtlMillis) {
+                shard.sessions.remove(id);
+                expirations.increment();
+                return null;
+            }
+            session.lastAccess = now;
+            index = session.location & 0xFF;
+        } finally {
+            shard.lock.unlock();
+        }
+        return locations[index];
+    }
+
+    public void put(String userId, String location) {
+        long id = parseId(userId);
+        if (id < 0 || location == null)
+            return;
+        int index = intern(location);
+        if (index < 0)
+            return;
+        Shard shard = shard(id);
+        long now = System.currentTimeMillis();
+        shard.lock.lock();
+        try {
+            Session session = shard.sessions.get(id);
+            if (session != null) {
+                session.location = (byte) index;
+                session.lastAccess = now;
+            } else {
+                shard.sessions.put(id, new Session((byte) index, now));
+            }
+            trim(shard, now);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /** Drops expired sessions from the old end, then the least recently used ones over the limit. */
+    private void trim(Shard shard, long now) {
+        Iterator<Session> it = shard.sessions.values().iterator();
+        while (it.hasNext()) {
+            Session eldest = it.next();
+            if (now - eldest.lastAccess > idleTtlMillis) {
+                it.remove();
+                expirations.increment();
+            } else if (shard.sessions.size() > maxPerShard) {
+                it.remove();
+                evictions.increment();
+            } else {
+                break;
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                size += shard.sessions.size();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long expirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * Writes the sessions that have not expired to {@code file}. The snapshot is written next to
+     * it and moved into place, so a crash while saving leaves the previous one.
+     */
+    public int save(Path file) throws IOException {
+        String[] table = locations;
+        long now = System.currentTimeMillis();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int saved = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(table.length);
+            for (String location : table)
+                out.writeUTF(location);
+            List<long[]> copy = new ArrayList<>();
+            for (Shard shard : shards) {
+                // lock은 복사하는 동안만 잡고 쓰기는 밖에서
+                copy.clear();
+                shard.lock.lock();
+                try {
+                    for (Map.Entry<Long, Session> e : shard.sessions.entrySet()) {
+                        Session s = e.getValue();
+                        if (now - s.lastAccess <= idleTtlMillis)
+                            copy.add(new long[] { e.getKey(), s.location & 0xFF, s.lastAccess });
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+                out.writeInt(copy.size());
+                for (long[] s : copy) {
+                    out.writeLong(s[0]);
+                    out.writeByte((int) s[1]);
+                    out.writeLong(s[2]);
+                }
+                saved += copy.size();
+            }
+            out.writeInt(-1);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return saved;
+    }
+
+    /** Adds the sessions from a snapshot written by {@link #save}; returns how many were still live. */
+    public int load(Path file) throws IOException {
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a session snapshot: " + file);
+            String[] table = new String[in.readInt()];
+            for (int i = 0; i < table.length; i++)
+                table[i] = in.readUTF();
+            int count;
+            while ((count = in.readInt()) >= 0) {
+                for (int i = 0; i < count; i++) {
+                    long id = in.readLong();
+                    int location = in.readUnsignedByte();
+                    long lastAccess = in.readLong();
+                    if (now - lastAccess > idleTtlMillis || location >= table.length)
+                        continue;
+                    int index = intern(table[location]);
+                    if (index < 0)
+                        continue;
+                    Shard shard = shard(id);
+                    shard.lock.lock();
+                    try {
+                        shard.sessions.put(id, new Session((byte) index, lastAccess));
+                        trim(shard, now);
+                    } finally {
+                        shard.lock.unlock();
+                    }
+                    loaded++;
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated session snapshot: " + file, e);
+        }
+        return loaded;
+    }
+
+    /** The index of {@code location} in the location table, or -1 if the table is full. */
+    private int intern(String location) {
+        Byte index = locationIndex.get(location);
+        if (index != null)
+            return index & 0xFF;
+        synchronized (this) {
+            index = locationIndex.get(location);
+            if (index != null)
+                return index & 0xFF;
+            String[] table = locations;
+            if (table.length == MAX_LOCATIONS)
+                return -1;
+            String[] grown = Arrays.copyOf(table, table.length + 1);
+            grown[table.length] = location;
+            // 표를 먼저 바꿔야 index를 본 reader가 항상 값을 찾음
+            locations = grown;
+            locationIndex.put(location, (byte) table.length);
+            return table.length;
+        }
+    }
+
+    private Shard shard(long id) {
+        // 연속된 id도 고르게 퍼지도록 섞음
+        long h = id * 0x9E3779B97F4A7C15L;
+        return shards[(int) (h >>> 60) & (SHARDS - 1)];
+    }
+
+    /** The UserId as a number, or -1 if it is not one WebServer could have minted. */
+    static long parseId(String userId) {
+        if (userId == null || userId.isEmpty() || userId.length() > 18)
+            return -1;
+        long id = 0;
+        for (int i = 0; i < userId.length(); i++) {
+            char c = userId.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+}
@@ -0,0 +1,123 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap memory for cached bodies. Requests are rounded up to a power of two between 1 KB and
+ * 4 MB and served from free lists of slices cut out of 4 MB direct buffers; the largest class is a
+ * whole slab, so large pictures are kept off-heap too, at the cost of up to half the slice unused.
+ * Bodies over 4 MB are refused and the caller keeps them on the heap (or the proxy moves them to
+ * the disk cache); a direct buffer per body would hold native memory until some later GC. Slabs
+ * are never handed back, freed slices are reused.
+ *
+ * The owner decides when a block is freed; {@link CachedPage} counts references so that happens
+ * only after the cache and every send still reading from it are done.
+ */
+public class SlabAllocator {
+    private static final int MIN_SHIFT = 10;
+    // 가장 큰 크기는 slab 하나 전체
+    private static final int MAX_SHIFT = 22;
+    private static final int SLAB_SIZE = 1 << MAX_SHIFT;
+
+    private final List<ConcurrentLinkedDeque<ByteBuffer>> freeLists = new ArrayList<>(MAX_SHIFT - MIN_SHIFT + 1);
+    private final long maxBytes;
+    // slab으로 잡아 둔 전체 크기, 사용 중인 크기
+    private final AtomicLong reserved = new AtomicLong();
+    private final AtomicLong used = new AtomicLong();
+
+    public SlabAllocator(long maxBytes) {
+        this.maxBytes = maxBytes;
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++)
+            freeLists.add(new ConcurrentLinkedDeque<>());
+    }
+
+    /**
+     * A block of at least {@code size} bytes, or null if the memory budget is used up or
+     * {@code size} is over the largest size class.
+     */
+    public Block allocate(int size) {
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+        if (shift > MAX_SHIFT)
+            return null;
+        ConcurrentLinkedDeque<ByteBuffer> freeList = freeLists.get(shift - MIN_SHIFT);
+        ByteBuffer chunk = freeList.poll();
+        if (chunk == null) {
+            if (!reserve(SLAB_SIZE))
+                return null;
+            ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+            int chunkSize = 1 << shift;
+            for (int pos = 0; pos < SLAB_SIZE; pos += chunkSize) {
+                freeList.push(slab.slice(pos, chunkSize));
+            }
+            chunk = freeList.poll();
+        }
+        used.addAndGet(1 << shift);
+        return new Block(this, chunk, shift, size);
+    }
+
+    private boolean reserve(long bytes) {
+        long current;
+        do {
+            current = reserved.get();
+            if (current + bytes > maxBytes)
+                return false;
+        } while (!reserved.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    private void free(Block block) {
+        used.addAndGet(-(1 << block.shift));
+        freeLists.get(block.shift - MIN_SHIFT).push(block.buffer.clear());
+    }
+
+    public long reservedBytes() {
+        return reserved.get();
+    }
+
+    public long usedBytes() {
+        return used.get();
+    }
+
+    @Override
+    public String toString() {
+        return "offHeapUsed=" + usedBytes() + " offHeapReserved=" + reservedBytes();
+    }
+
+    /** A piece of off-heap memory; {@link #free} gives it back exactly once. */
+    public static class Block {
+        private final SlabAllocator allocator;
+        private final ByteBuffer buffer;
+        private final int shift;
+        private final int size;
+        private final AtomicBoolean freed = new AtomicBoolean();
+
+        private Block(SlabAllocator allocator, ByteBuffer buffer, int shift, int size) {
+            this.allocator = allocator;
+            this.buffer = buffer;
+            this.shift = shift;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void free() {
+            if (!freed.compareAndSet(false, true))
+                throw new IllegalStateException("Block freed twice");
+            allocator.free(this);
+        }
+
+        void put(int index, byte[] src, int off, int len) {
+            buffer.put(index, src, off, len);
+        }
+
+        /** A read-only view of bytes {@code from} to {@code to}; only valid until the block is freed. */
+        ByteBuffer slice(int from, int to) {
+            return buffer.slice(from, to - from).asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An HTML file with plain-text placeholders (e.g. "TRAVEL DESTINATION TITLE"), parsed once into
+ * literal byte segments and slots. Rendering writes the segments and the encoded slot values
+ * straight to the output instead of running one String.replace pass per placeholder.
+ * The file is parsed again when its modification time changes.
+ */
+public class Template {
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private final Path file;
+    private final byte[][] placeholders;
+    private volatile Compiled compiled = null;
+    private volatile long lastCheck = 0;
+
+    /** Parsed form: segments[i] is followed by the value of slots[i] (no slot after the last segment). */
+    private static class Compiled {
+        final byte[][] segments;
+        final int[] slots;
+        final int literalLength;
+        final long modifiedTime;
+
+        Compiled(byte[][] segments, int[] slots, long modifiedTime) {
+            this.segments = segments;
+            this.slots = slots;
+            this.modifiedTime = modifiedTime;
+            int length = 0;
+            for (byte[] segment : segments)
+                length += segment.length;
+            this.literalLength = length;
+        }
+    }
+
+    /** Slot {@code i} is filled with the i-th render argument wherever {@code placeholders[i]} appears. */
+    public Template(Path file, String... placeholders) {
+        this.file = file;
+        this.placeholders = new byte[placeholders.length][];
+        for (int i = 0; i < placeholders.length; i++) {
+            this.placeholders[i] = placeholders[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    public static byte[][] encode(String... values) {
+        byte[][] encoded = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    /** Number of bytes {@link #render} will write for these values. */
+    public int contentLength(byte[]... values) throws IOException {
+        Compiled c = current();
+        int length = c.literalLength;
+        for (int slot : c.slots)
+            length += values[slot].length;
+        return length;
+    }
+
+    public void render(OutputStream out, byte[]... values) throws IOException {
+        Compiled c = current();
+        for (int i = 0; i < c.segments.length; i++) {
+            out.write(c.segments[i]);
+            if (i < c.slots.length)
+                out.write(values[c.slots[i]]);
+        }
+    }
+
+    public void render(OutputStream out, String... values) throws IOException {
+        render(out, encode(values));
+    }
+
+    private Compiled current() throws IOException {
+        Compiled c = compiled;
+        long now = System.currentTimeMillis();
+        if (c == null || now - lastCheck > CHECK_INTERVAL_MILLIS) {
+            synchronized (this) {
+                c = compiled;
+                if (c == null || now - lastCheck > CHECK_INTERVAL_MILLIS) {
+                    long modifiedTime = Files.getLastModifiedTime(file).toMillis();
+                    if (c == null || c.modifiedTime != modifiedTime) {
+                        c = compile(Files.readAllBytes(file), modifiedTime);
+                        compiled = c;
+                    }
+                    lastCheck = now;
+                }
+            }
+        }
+        return c;
+    }
+
+    private Compiled compile(byte[] source, long modifiedTime) {
+        List<byte[]> segments = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int start = 0;
+        int i = 0;
+        while (i < source.length) {
+            int slot = matchAt(source, i);
+            if (slot == -1) {
+                i++;
+                continue;
+            }
+            segments.add(copy(source, start, i));
+            slots.add(slot);
+            i += placeholders[slot].length;
+            start = i;
+        }
+        segments.add(copy(source, start, source.length));
+        int[] slotArray = new int[slots.size()];
+        for (int k = 0; k < slotArray.length; k++)
+            slotArray[k] = slots.get(k);
+        return new Compiled(segments.toArray(new byte[0][]), slotArray, modifiedTime);
+    }
+
+    /** Longest placeholder starting at {@code pos}, so "TITLE 1" wins over "TITLE". */
+    private int matchAt(byte[] source, int pos) {
+        int best = -1;
+        for (int p = 0; p < placeholders.length; p++) {
+            byte[] name = placeholders[p];
+            if (pos + name.length > source.length || (best != -1 && name.length <= placeholders[best].length))
+                continue;
+            int k = 0;
+            while (k < name.length && source[pos + k] == name[k])
+                k++;
+            if (k == name.length)
+                best = p;
+        }
+        return best;
+    }
+
+    private static byte[] copy(byte[] source, int from, int to) {
+        byte[] segment = new byte[to - from];
+        System.arraycopy(source, from, segment, 0, segment.length);
+        return segment;
+    }
+}
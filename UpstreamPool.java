@@ -0,0 +1,328 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of persistent HTTP/1.1 connections from a proxy to one origin server. At most
+ * {@code maxConnections} are open at a time; idle ones are closed after {@code idleTimeoutMillis}
+ * and checked before reuse without blocking; a reused connection the origin has closed in the
+ * meantime is detected by the caller, which retries once on a new one.
+ * Reads from the origin time out after {@code readTimeoutMillis}, so an origin that stops
+ * answering fails the request instead of holding a thread and a connection permit forever.
+ */
+public class UpstreamPool {
+    public static final int DEFAULT_READ_TIMEOUT = 30_000;
+
+    private final String host;
+    private final int port;
+    private final long idleTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final Semaphore permits;
+    private final Deque<Connection> idle = new ArrayDeque<>();
+
+    public UpstreamPool(String host, int port, int maxConnections, long idleTimeoutMillis) {
+        this(host, port, maxConnections, idleTimeoutMillis, DEFAULT_READ_TIMEOUT);
+    }
+
+    public UpstreamPool(String host, int port, int maxConnections, long idleTimeoutMillis, int readTimeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.permits = new Semaphore(maxConnections, true);
+        Thread evictor = new Thread(this::evictIdle, "upstream-idle-evictor");
+        evictor.setDaemon(true);
+        evictor.start();
+    }
+
+    /**
+     * Returns an idle connection that passed the health check, or a new one. Blocks while
+     * {@code maxConnections} are in use.
+     */
+    public Connection acquire() throws IOException {
+        try {
+            if (!permits.tryAcquire(30, TimeUnit.SECONDS))
+                throw new IOException("Timed out waiting for a connection to " + host + ":" + port);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a connection", e);
+        }
+        try {
+            Connection c;
+            while ((c = pollIdle()) != null) {
+                if (c.isHealthy(idleTimeoutMillis))
+                    return c;
+                c.closeQuietly();
+            }
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), readTimeoutMillis);
+                socket.setSoTimeout(readTimeoutMillis);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            return new Connection(socket, false);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a connection to the pool. It is only kept if the last response was read completely
+     * and the origin did not ask to close it.
+     */
+    public void release(Connection c, boolean reusable) {
+        try {
+            if (reusable && !c.socket.isClosed()) {
+                c.lastUsed = System.currentTimeMillis();
+                c.reused = true;
+                synchronized (idle) {
+                    idle.push(c);
+                }
+            } else {
+                c.closeQuietly();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Connection pollIdle() {
+        synchronized (idle) {
+            return idle.poll();
+        }
+    }
+
+    private void evictIdle() {
+        while (true) {
+            try {
+                Thread.sleep(Math.max(idleTimeoutMillis / 2, 100));
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            synchronized (idle) {
+                Iterator<Connection> it = idle.iterator();
+                while (it.hasNext()) {
+                    Connection c = it.next();
+                    if (now - c.lastUsed > idleTimeoutMillis) {
+                        it.remove();
+                        c.closeQuietly();
+                    }
+                }
+            }
+        }
+    }
+
+    public int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    public static class Connection {
+        final Socket socket;
+        final BufferedInputStream in;
+        final OutputStream out;
+        long lastUsed = System.currentTimeMillis();
+        // 이전 요청에 쓰였던 연결: origin이 그 사이 닫았을 수 있음
+        boolean reused;
+
+        Connection(Socket socket, boolean reused) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 1024);
+            this.reused = reused;
+        }
+
+        public boolean isReused() {
+            return reused;
+        }
+
+        public void send(String request) throws IOException {
+            out.write(request.getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+
+        /**
+         * Reads the status line and headers up to the blank line. Returns them with CRLF line ends
+         * but without the blank line, or null if the origin closed the connection first.
+         */
+        public String readResponseHead(int maxSize) throws IOException {
+            ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+            int state = 0;
+            while (state < 4) {
+                int b = in.read();
+                if (b == -1) {
+                    if (head.size() == 0)
+                        return null;
+                    throw new EOFException("Connection closed inside response headers");
+                }
+                head.write(b);
+                if (head.size() > maxSize)
+                    throw new IOException("Response headers larger than " + maxSize + " bytes");
+                state = (b == '\r') ? (state == 2 ? 3 : 1) : (b == '\n' && (state == 1 || state == 3)) ? state + 1 : 0;
+            }
+            return new String(head.toByteArray(), 0, head.size() - 2, StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * Body of the response whose headers are {@code head}: framed by Content-Length, chunked
+         * transfer coding, or the end of the connection.
+         */
+        public InputStream body(String head) throws IOException {
+            String transferEncoding = ProxyServer.extractHeader(head, "Transfer-Encoding");
+            if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked"))
+                return new ChunkedInputStream(in);
+            if (isBodyless(head))
+                return new BoundedInputStream(in, 0);
+            String contentLength = ProxyServer.extractHeader(head, "Content-Length");
+            if (contentLength != null)
+                return new BoundedInputStream(in, Long.parseLong(contentLength));
+            return in;
+        }
+
+        /** True if the connection can carry another request after the body of {@code head} is read. */
+        public boolean canReuse(String head) {
+            String connection = ProxyServer.extractHeader(head, "Connection");
+            if (connection != null && connection.equalsIgnoreCase("close"))
+                return false;
+            if (head.startsWith("HTTP/1.0") && (connection == null || !connection.equalsIgnoreCase("keep-alive")))
+                return false;
+            String transferEncoding = ProxyServer.extractHeader(head, "Transfer-Encoding");
+            return isBodyless(head) || ProxyServer.extractHeader(head, "Content-Length") != null
+                    || (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked"));
+        }
+
+        private static boolean isBodyless(String head) {
+            return head.startsWith("HTTP/1.1 304") || head.startsWith("HTTP/1.1 204")
+                    || head.startsWith("HTTP/1.0 304") || head.startsWith("HTTP/1.0 204");
+        }
+
+        boolean isHealthy(long idleTimeoutMillis) {
+            if (socket.isClosed() || System.currentTimeMillis() - lastUsed > idleTimeoutMillis)
+                return false;
+            // 대기 중인 연결에 읽을 게 있으면 잘못된 데이터, 기다리지는 않음
+            // (origin이 이미 닫은 연결은 fetchAndCachePage가 새 연결로 한 번 더 시도)
+            try {
+                return in.available() == 0;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * {@code head} without its Transfer-Encoding and Content-Length lines, for a body that is passed on
+     * decoded by {@link Connection#body} rather than in the origin's framing.
+     */
+    public static String withoutFraming(String head) {
+        StringBuilder kept = new StringBuilder(head.length());
+        for (String line : head.split("\r\n")) {
+            if (line.regionMatches(true, 0, "Transfer-Encoding:", 0, 18)
+                    || line.regionMatches(true, 0, "Content-Length:", 0, 15))
+                continue;
+            kept.append(line).append("\r\n");
+        }
+        return kept.toString();
+    }
+
+    /** Reads exactly {@code remaining} bytes and then reports end of stream. */
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long remaining) {
+            this.in = in;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1)
+                throw new EOFException("Connection closed with " + remaining + " body bytes left");
+            remaining -= n;
+            return n;
+        }
+    }
+
+    /** Decodes a chunked transfer coding; trailers are read and discarded. */
+    private static class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long chunkRemaining = 0;
+        private boolean done = false;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done)
+                return -1;
+            if (chunkRemaining == 0) {
+                String sizeLine = readLine();
+                int semicolon = sizeLine.indexOf(';');
+                if (semicolon != -1)
+                    sizeLine = sizeLine.substring(0, semicolon);
+                chunkRemaining = Long.parseLong(sizeLine.trim(), 16);
+                if (chunkRemaining == 0) {
+                    // trailer 줄들을 빈 줄까지 건너뜀
+                    while (!readLine().isEmpty()) {
+                    }
+                    done = true;
+                    return -1;
+                }
+            }
+            int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (n == -1)
+                throw new EOFException("Connection closed inside chunk");
+            chunkRemaining -= n;
+            if (chunkRemaining == 0)
+                readLine();
+            return n;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                if (b != '\r')
+                    line.append((char) b);
+            }
+            if (b == -1)
+                throw new EOFException("Connection closed inside chunked body");
+            return line.toString();
+        }
+    }
+}
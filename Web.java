@@ -12,10 +12,15 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 public class Web {
+    private static final Template DEST_TEMPLATE = new Template(Paths.get("resources/destination.html"),
+            "TRAVEL DESTINATION TITLE 1", "TRAVEL DESTINATION TITLE 2", "/destination1", "/destination2");
+
     private HashMap<String, String> UserData = new HashMap<>();
     private boolean cookieFeature = true;
     private ServerSocket serverSocket;
     private int port;
+    // 연결을 하나씩 처리하므로 parser 하나를 재사용
+    private final HttpRequestParser request = new HttpRequestParser();
     private JsonObject destinationsJsonData = null;
 
     private JsonObject getDestinationsData() throws IOException {
@@ -38,19 +43,25 @@ public class Web {
             try {
                 Socket clientSocket = serverSocket.accept();
                 InputStream input = clientSocket.getInputStream();
-                BufferedReader reader = new BufferedReader(new InputStreamReader(input));
 
                 // Parse request line and headers
-                String requestLine = reader.readLine();
-                if (requestLine != null && requestLine.startsWith("GET")) {
-                    System.out.println("Request: " + requestLine);
+                request.reset();
+                boolean received;
+                try {
+                    received = request.readFrom(input);
+                } catch (HttpRequestParser.ParseException e) {
+                    clientSocket.getOutputStream().write(e.response());
+                    clientSocket.close();
+                    continue;
+                }
+                if (received && request.method().equals("GET")) {
+                    System.out.println("Request: " + request.requestLine());
 
-                    Map<String, String> headers = parseHeaders(reader);
+                    Map<String, String> headers = request.headers();
                     String ifModifiedSince = headers.get("if-modified-since");
                     String connectionHeader = headers.get("connection");
 
-                    String[] parts = requestLine.split(" ");
-                    String path = parts[1];
+                    String path = request.target();
 
                     // Process the request based on the path
                     if (path.equals("/")) {
@@ -123,7 +134,7 @@ public class Web {
     }
 
     private void sendDestResponse(Socket clientSocket, String dest, String cook) throws IOException {
-        OutputStream O = clientSocket.getOutputStream();
+        OutputStream O = new BufferedOutputStream(clientSocket.getOutputStream());
         String filePath = "resources/destination.html";
         File file = new File(filePath);
         String lastModified = getLastModifiedTime(filePath);
@@ -141,23 +152,20 @@ public class Web {
                 Dest1 = "Hawaii";
                 Dest2 = "Maldives";
             }
-            // destination.html 내용을 문자열로 읽고 대체할 텍스트 수정
-            String HTMLstring = new String(Files.readAllBytes(Paths.get("resources/destination.html")));
-            HTMLstring = HTMLstring.replace("TRAVEL DESTINATION TITLE 1", Dest1);
-            HTMLstring = HTMLstring.replace("TRAVEL DESTINATION TITLE 2", Dest2);
-            HTMLstring = HTMLstring.replace("/destination1", "/" + Dest1.replace(" ", "-"));
-            HTMLstring = HTMLstring.replace("/destination2", "/" + Dest2.replace(" ", "-"));
+            // destination.html 템플릿에 값 채우기
+            byte[][] values = Template.encode(Dest1, Dest2, "/" + Dest1.replace(" ", "-"), "/" + Dest2.replace(" ", "-"));
 
             String responseHeader = "HTTP/1.1 200 OK\r\n" +
                     "Content-Type: text/html\r\n" +
-                    "Content-Length: " + HTMLstring.length() + "\r\n" +
+                    "Content-Length: " + DEST_TEMPLATE.contentLength(values) + "\r\n" +
                     (cookieFeature ? "Set-Cookie: UserId=" + cook + "\r\n" : "") +
                     // "Date: " + getCurrentTime() + "\r\n" +
                     (lastModified != null ? "Last-Modified: " + lastModified + "\r\n" : "") +
                     "\r\n";
             O.write(responseHeader.getBytes());
 
-            O.write(HTMLstring.getBytes());
+            DEST_TEMPLATE.render(O, values);
+            O.flush();
             System.out.println("HTTP 200 OK /" + dest);
             clientSocket.close();
         } else
@@ -200,21 +208,6 @@ public class Web {
             send404(clientSocket, userId);
     }
 
-    private static Map<String, String> parseHeaders(BufferedReader reader) throws IOException {
-        Map<String, String> headers = new HashMap<>();
-        String line;
-
-        while ((line = reader.readLine()) != null && !line.isEmpty()) {
-            int colonIndex = line.indexOf(":");
-            if (colonIndex != -1) {
-                String headerName = line.substring(0, colonIndex).trim().toLowerCase();
-                String headerValue = line.substring(colonIndex + 1).trim();
-                headers.put(headerName, headerValue);
-            }
-        }
-        return headers;
-    }
-
     private String getUserCookie(Map<String, String> headers) {
         String cookieHeader = headers.get("cookie");
         if (cookieHeader != null) {
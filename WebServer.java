@@ -1,113 +1,353 @@
 import java.io.*;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.nio.file.attribute.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.util.zip.CRC32;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
 public class WebServer {
-    private HashMap<String, String> UserData = new HashMap<>();
+    private static final Template DEST_TEMPLATE = new Template(Paths.get("resources/destination.html"),
+            "TRAVEL DESTINATION TITLE 1", "TRAVEL DESTINATION TITLE 2", "/destination1", "/destination2");
+    private static final Template DETAIL_TEMPLATE = new Template(Paths.get("resources/detail.html"),
+            "TRAVEL DESTINATION TITLE", "TRAVEL DESTINATION TYPE", "TRAVEL DESTINATION DESCRIPTION", "IMAGE SRC");
+
+    static final int DEFAULT_MAX_SESSIONS = 100_000;
+    static final long DEFAULT_SESSION_TTL = 30 * 60 * 1000L;
+
+    // UserId -> 마지막으로 본 category/destination, 여러 핸들러 스레드가 동시에 접근
+    private final SessionStore sessions;
     private boolean cookieFeature = true;
-    private ServerSocket serverSocket;
+    private ServerSocketChannel serverChannel;
     private int port;
-    private JsonObject destinationsJsonData = null;
+    private final DestinationCatalog.Reloading catalog;
+    private final ExecutorService executor;
+    // 렌더링된 destination/detail 페이지, 템플릿이나 json이 바뀌면 비움
+    private final ResponseCache pageCache;
+    // 보내는 파일의 mtime, 길이, Last-Modified, ETag
+    private final FileMetadataCache files = new FileMetadataCache(1000);
+    // index.html 등 정적 텍스트 파일의 gzip/deflate body
+    private final PrecompressedFiles compressedFiles = new PrecompressedFiles();
+    private int keepAliveTimeout = 5000;
+    private int maxRequestsPerConnection = 100;
+    // /__metrics, route별 요청 수/latency
+    private final Metrics metrics = new Metrics("webserver", "route", "index", "category", "detail", "pictures",
+            "404");
 
-    private JsonObject getDestinationsData() throws IOException {
-        if (destinationsJsonData == null) {
-            String str = new String(Files.readAllBytes(Paths.get("resources/destinations.json")));
-            destinationsJsonData = JsonParser.parseString(str).getAsJsonObject();
-        }
-        return destinationsJsonData;
+    public WebServer(int portNum, boolean cookieEnabled) throws IOException {
+        this(portNum, cookieEnabled, newVirtualThreadExecutor());
     }
 
-    public WebServer(int portNum, boolean cookieEnabled) throws IOException {
+    public WebServer(int portNum, boolean cookieEnabled, ExecutorService executor) throws IOException {
+        this(portNum, cookieEnabled, executor, DEFAULT_MAX_SESSIONS, DEFAULT_SESSION_TTL);
+    }
+
+    /** Remembers at most {@code maxSessions} UserIds, each until it is idle for {@code sessionTtlMillis}. */
+    public WebServer(int portNum, boolean cookieEnabled, ExecutorService executor, int maxSessions,
+            long sessionTtlMillis) throws IOException {
         this.port = portNum;
-        serverSocket = new ServerSocket(port);
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
         this.cookieFeature = cookieEnabled;
+        this.executor = executor;
+        this.sessions = new SessionStore(maxSessions, sessionTtlMillis);
+        this.catalog = new DestinationCatalog.Reloading(Paths.get("resources/destinations.json"), 1000);
+        this.pageCache = new ResponseCache(1000, Paths.get("resources/destination.html"),
+                Paths.get("resources/detail.html"), Paths.get("resources/destinations.json"));
+        this.pageCache.setOnChange(catalog::refresh);
+        metrics.gauge("page_cache_entries", "Rendered pages held in the response cache.", pageCache::size);
+        metrics.counter("log_dropped_total", "Log messages dropped because the log buffer was full.", Log::dropped);
+        metrics.gauge("sessions", "UserId sessions remembered for the redirect from /.", sessions::size);
+        metrics.counter("session_evictions_total", "Sessions dropped to stay within the session limit.",
+                sessions::evictions);
+        metrics.counter("session_expirations_total", "Sessions dropped after the idle timeout.",
+                sessions::expirations);
+    }
+
+    /**
+     * Idle timeout in milliseconds and the number of requests served on one connection
+     * before the server answers with Connection: close.
+     */
+    public void setKeepAlive(int timeoutMillis, int maxRequests) {
+        this.keepAliveTimeout = timeoutMillis;
+        this.maxRequestsPerConnection = maxRequests;
+    }
+
+    /**
+     * Loads the sessions saved in {@code file}, if it exists, and saves them there every minute and
+     * when the JVM exits.
+     */
+    public void enableSessionSnapshots(Path file) {
+        if (Files.exists(file)) {
+            try {
+                Log.info("Loaded {} sessions from {}", sessions.load(file), file);
+            } catch (IOException e) {
+                Log.warn("Could not load sessions from {}: {}", file, e.getMessage());
+            }
+        }
+        Runnable save = () -> {
+            try {
+                Log.debug("Saved {} sessions to {}", sessions.save(file), file);
+            } catch (IOException e) {
+                Log.warn("Could not save sessions to {}: {}", file, e.getMessage());
+            }
+        };
+        ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        saver.scheduleWithFixedDelay(save, 60, 60, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(save, "session-snapshot-exit"));
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor when the running JVM has one (Java 21+),
+     * otherwise falls back to a bounded platform thread pool.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            Log.info("Virtual threads not available, using platform thread pool.");
+            return newPlatformExecutor(Runtime.getRuntime().availableProcessors() * 16);
+        }
+    }
+
+    /**
+     * Fixed pool of platform threads with a bounded backlog. When the backlog is full new
+     * connections are rejected (503) rather than served on the accept thread, which could then be
+     * held by one keep-alive connection for its whole lifetime.
+     */
+    public static ExecutorService newPlatformExecutor(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.AbortPolicy());
     }
 
     public void start() {
-        System.out.println("Listening on port: " + this.port);
+        Log.info("Listening on port: {}", this.port);
         // 항상 열린 거 구현
         while (true) {
             try {
-                Socket clientSocket = serverSocket.accept();
-                InputStream input = clientSocket.getInputStream();
-                BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-                String line = reader.readLine();
-                if (line != null) {
-                    // request 화면에 출력
-                    System.out.println("Request: " + line);
-
-                    // header 처리
-                    Map<String, String> headers = new HashMap<>();
-                    String headerLine;
-                    while ((headerLine = reader.readLine()) != null && !headerLine.isEmpty()) {
-                        int colonIndex = headerLine.indexOf(":");
-                        if (colonIndex != -1) {
-                            String headerName = headerLine.substring(0, colonIndex).trim();
-                            String headerValue = headerLine.substring(colonIndex + 1).trim();
-                            headers.put(headerName, headerValue);
-                        }
-                    }
-                    String UserCookie = getUserCookie(headers);
-                    // get 요청 처리
-                    if (line.startsWith("GET")) {
-                        String[] parts = line.split(" ");
-                        String Path = parts[1];
-                        if (Path.equals("/")) {
-                            System.out.println("Idx page request");
-                            if (cookieFeature && UserData.containsKey(UserCookie)) {
-                                String lastLoc = UserData.get(UserCookie);
-                                // 로그 출력
-                                System.out.println("Returning user. Redirecting to: " + lastLoc);
-                                String path = "/" + lastLoc;
-                                System.out.println("HTTP GET: /index.html");
-                                Redirect(clientSocket, path);
-                            } else {
-                                System.out.println("GET: /index.html");
-                                sendResponse(clientSocket, "index.html", "text/html", UserCookie, headers);
-                            }
-                        } else if (Path.equals("/mountains") || Path.equals("/city") || Path.equals("/beach")) {
-                            String dest = Path.split("/")[1];
-                            System.out.println("dest page request");
-                            System.out.println("GET: /" + dest);
-                            if (cookieFeature)
-                                UserData.put(UserCookie, dest);
-                            sendDestResponse(clientSocket, dest, UserCookie, headers);
-                        } else if (Path.startsWith("/pictures")) {
-                            String path = Path.split("/")[2];
-                            System.out.println("HTTP GET: /pictures/" + path);
-                            sendImgResponse(clientSocket, path, UserCookie, headers);
-                        } else {
-                            // detail 페이지 확인
-                            String dest = Path.split("/")[1].replace("-", " ");
-                            if (destExit(dest)) {
-                                if (cookieFeature)
-                                    UserData.put(UserCookie, dest.replace(" ", "-"));
-                                System.out.println("Detail page requested");
-                                System.out.println("HTTP GET: /" + dest);
-                                sendDetail(clientSocket, dest, UserCookie, headers);
-                            } else {
-                                send404(clientSocket, UserCookie);
-                            }
-                        }
-                    }
+                Socket clientSocket = serverChannel.accept().socket();
+                try {
+                    executor.execute(() -> handleClient(clientSocket));
+                } catch (RejectedExecutionException e) {
+                    Log.warn("Rejected client connection: {}", e.getMessage());
+                    rejectBusy(clientSocket);
+                }
+            } catch (IOException e) {
+                Log.warn("Error accepting client connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** Answers 503 and closes; the response fits in the socket buffer, so the accept thread does not wait. */
+    private static void rejectBusy(Socket clientSocket) throws IOException {
+        try {
+            clientSocket.getOutputStream().write(("HTTP/1.1 503 Service Unavailable\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "Retry-After: 1\r\n" +
+                    "Connection: close\r\n\r\n").getBytes());
+        } catch (IOException ignored) {
+        } finally {
+            clientSocket.close();
+        }
+    }
+
+    /**
+     * Serves connections from non-blocking channels on {@code eventLoops} selector threads
+     * instead of one blocking thread per connection.
+     */
+    public void startNio(int eventLoops) throws IOException {
+        Log.info("Listening on port: {} (nio, {} event loops)", this.port, eventLoops);
+        new NioEngine(this, serverChannel, eventLoops).run();
+    }
+
+    int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    private void handleClient(Socket clientSocket) {
+        metrics.connectionOpened();
+        OutputStream O = null;
+        try {
+            clientSocket.setSoTimeout(keepAliveTimeout);
+            InputStream input = clientSocket.getInputStream();
+            HttpRequestParser request = new HttpRequestParser();
+            O = clientSocket.getChannel() != null
+                    ? new ChannelOutputStream(clientSocket.getChannel())
+                    : new BufferedOutputStream(clientSocket.getOutputStream());
+            int served = 0;
+            boolean keepAlive = true;
+            // 같은 연결에서 Connection: close, idle timeout, 최대 요청 수까지 반복
+            while (keepAlive && request.readFrom(input)) {
+                long start = System.nanoTime();
+                String method = request.method(), path = request.target();
+                Log.debug("Request: {} {}", method, path);
+
+                served++;
+                keepAlive = isKeepAlive(request) && served < maxRequestsPerConnection;
+                // get 요청 처리
+                long before = bytesWritten(O);
+                int status;
+                if (method.equals("GET")) {
+                    status = handleGet(O, keepAlive, path, request.headers());
+                } else {
+                    // 요청 body를 읽지 않으므로 연결을 유지할 수 없음
+                    keepAlive = false;
+                    status = 0;
                 }
+                finishRequest(method, path, status, before < 0 ? -1 : bytesWritten(O) - before, start);
+                request.next();
+                // pipelining: 뒤따르는 요청이 이미 도착해 있으면 응답을 모아서 보냄
+                if (!keepAlive || (!request.hasBuffered() && input.available() == 0))
+                    O.flush();
+            }
+        } catch (SocketTimeoutException e) {
+            Log.debug("Idle connection timed out.");
+        } catch (HttpRequestParser.ParseException e) {
+            Log.debug("Bad request: {}", e.getMessage());
+            try {
+                O.write(e.response());
+                O.flush();
+            } catch (IOException ignored) {
+            }
+        } catch (IOException e) {
+            Log.warn("Error handling client connection: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            // executor task의 끝: 여기서 잡지 않으면 로그 없이 사라짐, 연결은 finally에서 닫음
+            Log.warn("Error handling client connection: {}", e.toString());
+        } finally {
+            metrics.connectionClosed();
+            try {
+                clientSocket.close();
             } catch (IOException e) {
-                System.err.println("Error handling client connection: " + e.getMessage());
+                Log.warn("Error closing client connection: {}", e.getMessage());
             }
         }
     }
 
+    private static long bytesWritten(OutputStream O) {
+        return O instanceof ChannelOutputStream ? ((ChannelOutputStream) O).bytesWritten() : -1;
+    }
+
+    /** Updates the metrics for a finished request and writes its access log line. */
+    void finishRequest(String method, String path, int status, long bytes, long startNanos) {
+        metrics.record(route(path, status), bytes, System.nanoTime() - startNanos);
+        logAccess(method, path, status, bytes, startNanos);
+    }
+
+    /** The handleGet branch that answered {@code path}, as used for the metrics. */
+    private String route(String path, int status) {
+        if (status == 0)
+            return "other";
+        if (status == 404)
+            return "404";
+        if (path.equals("/"))
+            return "index";
+        if (path.equals(Metrics.PATH))
+            return "metrics";
+        if (path.startsWith("/pictures"))
+            return "pictures";
+        if (catalog.get().types().contains(path.substring(1)))
+            return "category";
+        return "detail";
+    }
+
+    /** Access log line for one request; status 0 means the request was not answered. */
+    static void logAccess(String method, String path, int status, long bytes, long startNanos) {
+        Log.access(method, path, status, bytes, startNanos, null);
+    }
+
+    static boolean isKeepAlive(HttpRequestParser request) {
+        String connection = request.header("Connection");
+        if (request.version().equals("HTTP/1.0"))
+            return "keep-alive".equalsIgnoreCase(connection);
+        return !"close".equalsIgnoreCase(connection);
+    }
+
+    /** Writes the response for a GET request and returns its status code. */
+    int handleGet(OutputStream O, boolean keepAlive, String Path, Map<String, String> headers)
+            throws IOException {
+        if (Path.equals(Metrics.PATH))
+            return sendMetrics(O, keepAlive);
+        // 요청에 UserId가 없으면 새로 만들어 Set-Cookie로 보냄
+        String requestUserId = getUserCookie(headers);
+        String UserCookie = requestUserId == null && cookieFeature ? newUserId() : requestUserId;
+        if (Path.equals("/")) {
+            Log.debug("Idx page request");
+            String lastLoc = requestUserId != null ? sessions.get(requestUserId) : null;
+            if (lastLoc != null) {
+                // 로그 출력
+                Log.debug("Returning user. Redirecting to: {}", lastLoc);
+                String path = "/" + lastLoc;
+                Log.debug("HTTP GET: /index.html");
+                return Redirect(O, keepAlive, path);
+            } else {
+                Log.debug("GET: /index.html");
+                return sendResponse(O, keepAlive, "index.html", "text/html", UserCookie, headers);
+            }
+        } else if (catalog.get().types().contains(Path.substring(1))) {
+            String dest = Path.substring(1);
+            Log.debug("dest page request");
+            Log.debug("GET: /{}", dest);
+            rememberLocation(UserCookie, dest);
+            return sendDestResponse(O, keepAlive, dest, UserCookie, headers);
+        } else if (Path.startsWith("/pictures")) {
+            String[] parts = Path.split("/");
+            // "/pictures", "/pictures/" 처럼 파일 이름이 없는 경우
+            if (parts.length < 3)
+                return send404(O, keepAlive, UserCookie);
+            String path = parts[2];
+            Log.debug("HTTP GET: /pictures/{}", path);
+            return sendImgResponse(O, keepAlive, path, UserCookie, headers);
+        } else {
+            // detail 페이지 확인
+            String[] parts = Path.split("/");
+            DestinationCatalog.Destination dest = parts.length > 1 ? catalog.get().bySlug(parts[1]) : null;
+            if (dest != null) {
+                rememberLocation(UserCookie, dest.slug);
+                Log.debug("Detail page requested");
+                Log.debug("HTTP GET: /{}", dest.name);
+                return sendDetail(O, keepAlive, dest, UserCookie, headers);
+            } else {
+                return send404(O, keepAlive, UserCookie);
+            }
+        }
+    }
+
+    /**
+     * Stores the location under the UserId of the response, also one just minted for a first visit
+     * so its first page is remembered. Clients that never send the cookie back (crawlers) add a
+     * session per request; the store's size limit and idle TTL bound them.
+     */
+    private void rememberLocation(String userId, String location) {
+        if (userId != null)
+            sessions.put(userId, location);
+    }
+
+    /** The UserId cookie the request carried, or null if it had none or cookies are off. */
     private String getUserCookie(Map<String, String> headers) {
         String cook = null;
         if (cookieFeature == false)
@@ -118,279 +358,402 @@ public class WebServer {
             for (String cookie : cookies) {
                 if (cookie.startsWith("UserId=")) {
                     cook = cookie.substring(7);
-                    System.out.println("cookie : " + cook);
+                    Log.debug("cookie : {}", cook);
                 }
             }
         }
 
-        if (cook == null) {
-            cook = String.valueOf((long) (Math.random() * 1000000000L));
-            System.out.println("New user requested page, cookie will be set.");
-        } else {
-            System.out.println("Returning user, UserId: " + cook);
-        }
-
+        if (cook != null)
+            Log.debug("Returning user, UserId: {}", cook);
         return cook;
     }
 
-    private void sendResponse(Socket clientSocket, String fileName, String contentType, String cookie,
+    private static String newUserId() {
+        Log.debug("New user requested page, cookie will be set.");
+        return String.valueOf((long) (Math.random() * 1000000000L));
+    }
+
+    private int sendResponse(OutputStream O, boolean keepAlive, String fileName, String contentType, String cookie,
             Map<String, String> headers)
             throws IOException {
-        OutputStream O = clientSocket.getOutputStream();
-        String filePath = "resources/" + fileName;
-        File file = new File(filePath);
-        String lastModified = getLastModifiedTime(filePath);
-        String ifModifiedSince = headers.get("If-Modified-Since");
-        if (ifModifiedSince != null && lastModified != null && isNotModified(ifModifiedSince, lastModified)) {
-            sendNotModifiedResponse(O);
-            clientSocket.close();
-            return;
-        }
-
-        if (file.exists()) {
+        FileMetadataCache.Metadata file = files.get("resources/" + fileName);
+        if (file == null)
+            return send404(O, keepAlive, cookie);
+        String cookieAndCaching = (cookieFeature ? "Set-Cookie: UserId=" + cookie + "\r\n" : "") +
+                (cookieFeature ? "Cache-Control: no-store\r\n" : "Cache-Control: max-age=60\r\n");
+        boolean varies = ContentEncoding.isCompressible(contentType) && compressedFiles.covers(file);
+        String encoding = varies ? ContentEncoding.negotiate(headers.get("Accept-Encoding")) : null;
+        if (encoding != null)
+            return sendCompressedFile(O, keepAlive, file, contentType, encoding, cookieAndCaching, headers);
+        if (isNotModified(headers, file.etag, file.lastModifiedSeconds))
+            return sendNotModifiedResponse(O, keepAlive, file.etag);
+        if (varies)
+            cookieAndCaching += "Vary: Accept-Encoding\r\n";
+        List<HttpRange> ranges = HttpRange.requested(headers, file.length, file.etag, file.lastModifiedSeconds);
+        if (ranges != null)
+            return sendRanges(O, keepAlive, file, contentType, cookieAndCaching, ranges);
+
+        String responseHeader = "HTTP/1.1 200 OK\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Length: " + file.length + "\r\n" +
+                cookieAndCaching +
+                // "Date: " + getCurrentTime() + "\r\n" +
+                "Last-Modified: " + file.lastModified + "\r\n" +
+                "ETag: " + file.etag + "\r\n" +
+                "Accept-Ranges: bytes\r\n" +
+                connectionHeader(keepAlive) +
+                "\r\n";
+        // 로그 출력
+        Log.debug("Response Header:\n{}", responseHeader);
+        O.write(responseHeader.getBytes());
 
-            String responseHeader = "HTTP/1.1 200 OK\r\n" +
-                    "Content-Type: " + contentType + "\r\n" +
-                    (cookieFeature ? "Set-Cookie: UserId=" + cookie + "\r\n" : "") +
-                    (cookieFeature ? "Cache-Control: no-store\r\n" : "Cache-Control: max-age=60\r\n") +
-                    // "Date: " + getCurrentTime() + "\r\n" +
-                    (lastModified != null ? "Last-Modified: " + lastModified + "\r\n" : "") +
-                    "\r\n";
-            // 로그 출력
-            System.out.println("Response Header:\n" + responseHeader);
-            O.write(responseHeader.getBytes());
+        sendFileBody(O, file, 0, file.length);
+        Log.debug("HTTP 200 OK: {}", fileName);
+        return 200;
+    }
 
-            FileInputStream fileInputStream = new FileInputStream(file);
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                O.write(buffer, 0, bytesRead);
-            }
-            fileInputStream.close();
-            System.out.println("HTTP 200 OK: " + fileName);
-            clientSocket.close();
-        } else
-            send404(clientSocket, cookie);
+    /** A static text file compressed with {@code encoding}; Range requests get the whole body. */
+    private int sendCompressedFile(OutputStream O, boolean keepAlive, FileMetadataCache.Metadata file,
+            String contentType, String encoding, String extraHeaders, Map<String, String> headers) throws IOException {
+        String etag = ContentEncoding.etag(file.etag, encoding);
+        if (isNotModified(headers, etag, file.lastModifiedSeconds))
+            return sendNotModifiedResponse(O, keepAlive, etag);
+        byte[] body = compressedFiles.get(file, encoding);
+        String responseHeader = "HTTP/1.1 200 OK\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Encoding: " + encoding + "\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                extraHeaders +
+                "Vary: Accept-Encoding\r\n" +
+                "Last-Modified: " + file.lastModified + "\r\n" +
+                "ETag: " + etag + "\r\n" +
+                connectionHeader(keepAlive) +
+                "\r\n";
+        O.write(responseHeader.getBytes());
+        O.write(body);
+        Log.debug("HTTP 200 OK: {} ({}, {} bytes)", file.path, encoding, body.length);
+        return 200;
     }
 
-    private void sendDestResponse(Socket clientSocket, String dest, String cook, Map<String, String> headers)
+    private int sendDestResponse(OutputStream O, boolean keepAlive, String dest, String cook, Map<String, String> headers)
             throws IOException {
-        OutputStream O = clientSocket.getOutputStream();
-        String filePath = "resources/destination.html";
-        File file = new File(filePath);
-        String lastModified = getLastModifiedTime(filePath);
-        String Dest1 = "", Dest2 = "";
+        ResponseCache.Page page = pageCache.get("/" + dest, () -> renderDestPage(dest));
+        if (page == null)
+            return send404(O, keepAlive, cook);
+        page = negotiate(page, headers);
         // modified;
-        String ifModifiedSince = headers.get("If-Modified-Since");
-        if (ifModifiedSince != null && lastModified != null && isNotModified(ifModifiedSince, lastModified)) {
-            sendNotModifiedResponse(O);
-            clientSocket.close();
-            return;
-        }
-        if (file.exists()) {
-            if (dest.equals("mountains")) {
-                Dest1 = "Swiss Alps";
-                Dest2 = "Rocky Mountains";
-            } else if (dest.equals("city")) {
-                Dest1 = "Paris";
-                Dest2 = "New York";
-            } else {
-                Dest1 = "Hawaii";
-                Dest2 = "Maldives";
-            }
-            // destination.html 내용을 문자열로 읽고 대체할 텍스트 수정
-            String HTMLstring = new String(Files.readAllBytes(Paths.get("resources/destination.html")));
-            HTMLstring = HTMLstring.replace("TRAVEL DESTINATION TITLE 1", Dest1);
-            HTMLstring = HTMLstring.replace("TRAVEL DESTINATION TITLE 2", Dest2);
-            HTMLstring = HTMLstring.replace("/destination1", "/" + Dest1.replace(" ", "-"));
-            HTMLstring = HTMLstring.replace("/destination2", "/" + Dest2.replace(" ", "-"));
-
-            String responseHeader = "HTTP/1.1 200 OK\r\n" +
-                    "Content-Type: text/html\r\n" +
-                    "Content-Length: " + HTMLstring.length() + "\r\n" +
-                    (cookieFeature ? "Set-Cookie: UserId=" + cook + "\r\n" : "") +
-                    (cookieFeature ? "Cache-Control: no-store\r\n" : "Cache-Control: max-age=60\r\n") +
-                    // "Date: " + getCurrentTime() + "\r\n" +
-                    (lastModified != null ? "Last-Modified: " + lastModified + "\r\n" : "") +
-                    "\r\n";
-            O.write(responseHeader.getBytes());
-
-            O.write(HTMLstring.getBytes());
-            System.out.println("HTTP 200 OK /" + dest);
-            clientSocket.close();
-        } else
-            send404(clientSocket, cook);
+        if (isNotModified(headers, page.etag, page.lastModifiedSeconds))
+            return sendNotModifiedResponse(O, keepAlive, page.etag);
+        sendPage(O, keepAlive, page, cook);
+        Log.debug("HTTP 200 OK /{}", dest);
+        return 200;
     }
 
-    private void sendImgResponse(Socket clientSocket, String path, String userId, Map<String, String> headers)
-            throws IOException {
-        OutputStream O = clientSocket.getOutputStream();
-        String filePath = "resources/pictures/" + path;
-        File file = new File(filePath);
-        String lastModified = getLastModifiedTime(filePath);
-        String ifModifiedSince = headers.get("If-Modified-Since");
-        if (ifModifiedSince != null && lastModified != null && isNotModified(ifModifiedSince, lastModified)) {
-            sendNotModifiedResponse(O);
-            clientSocket.close();
-            return;
-        }
+    private ResponseCache.Page renderDestPage(String dest) throws IOException {
+        FileMetadataCache.Metadata template = files.get("resources/destination.html");
+        if (template == null)
+            return null;
+        // 템플릿 자리가 두 개뿐이라 해당 타입의 앞 두 곳만 표시
+        List<DestinationCatalog.Destination> list = catalog.get().byType(dest);
+        DestinationCatalog.Destination Dest1 = list.size() > 0 ? list.get(0) : null;
+        DestinationCatalog.Destination Dest2 = list.size() > 1 ? list.get(1) : null;
+        // destination.html 템플릿에 값 채우기
+        ByteArrayOutputStream body = new ByteArrayOutputStream(2048);
+        DEST_TEMPLATE.render(body, Dest1 != null ? Dest1.name : "", Dest2 != null ? Dest2.name : "",
+                Dest1 != null ? "/" + Dest1.slug : "/", Dest2 != null ? "/" + Dest2.slug : "/");
+        return buildPage("text/html", body.toByteArray(), template);
+    }
 
-        if (file.exists()) {
+    /** Status line and the headers shared by every user; Set-Cookie and Connection are added per request. */
+    private ResponseCache.Page buildPage(String contentType, byte[] body, FileMetadataCache.Metadata template) {
+        // 렌더링 결과는 템플릿 외에 destinations.json에도 달려 있으므로 ETag는 body에서 만듦
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        String etag = FileMetadataCache.etag(crc.getValue(), body.length);
+        return new ResponseCache.Page(pageHead(contentType, null, body.length, template.lastModified, etag), body,
+                contentType, template.lastModified, template.lastModifiedSeconds, etag);
+    }
 
-            String responseHeader = "HTTP/1.1 200 OK\r\n" +
-                    "Content-Type: image/jpeg\r\n" +
-                    "Content-Length: " + file.length() + "\r\n" +
-                    (cookieFeature ? "Set-Cookie: UserId=" + userId + "\r\n" : "") +
-                    // "Date: " + getCurrentTime() + "\r\n" +
-                    (lastModified != null ? "Last-Modified: " + lastModified + "\r\n" : "") +
-                    "\r\n";
-            O.write(responseHeader.getBytes());
+    private byte[] pageHead(String contentType, String encoding, int length, String lastModified, String etag) {
+        boolean varies = encoding != null
+                || (ContentEncoding.isCompressible(contentType) && length >= ContentEncoding.MIN_LENGTH);
+        return ("HTTP/1.1 200 OK\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                (encoding != null ? "Content-Encoding: " + encoding + "\r\n" : "") +
+                "Content-Length: " + length + "\r\n" +
+                (cookieFeature ? "Cache-Control: no-store\r\n" : "Cache-Control: max-age=60\r\n") +
+                (varies ? "Vary: Accept-Encoding\r\n" : "") +
+                // "Date: " + getCurrentTime() + "\r\n" +
+                "Last-Modified: " + lastModified + "\r\n" +
+                "ETag: " + etag + "\r\n").getBytes();
+    }
 
-            FileInputStream fileInputStream = new FileInputStream(file);
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                O.write(buffer, 0, bytesRead);
-            }
-            fileInputStream.close();
-            System.out.println("HTTP 200 OK /pictures/" + path);
-            clientSocket.close();
-        } else
-            send404(clientSocket, userId);
+    /**
+     * The variant of a rendered page the client accepts. It is compressed on first use and cached
+     * with the page, so it is dropped with it when a template or destinations.json changes.
+     */
+    private ResponseCache.Page negotiate(ResponseCache.Page page, Map<String, String> headers) {
+        if (!ContentEncoding.isCompressible(page.contentType) || page.body.length < ContentEncoding.MIN_LENGTH)
+            return page;
+        String encoding = ContentEncoding.negotiate(headers.get("Accept-Encoding"));
+        if (encoding == null)
+            return page;
+        return page.variant(encoding, p -> encodePage(p, encoding));
     }
 
-    private boolean destExit(String dest) {
+    private ResponseCache.Page encodePage(ResponseCache.Page page, String encoding) {
         try {
-            // String String = new
-            // String(Files.readAllBytes(Paths.get("resources/destinations.json")));
-            // JsonObject Object = JsonParser.parseString(String).getAsJsonObject();
-            JsonObject Object = getDestinationsData();
-            JsonArray Array = Object.getAsJsonArray("destinations");
-            for (JsonElement element : Array) {
-                JsonObject destObject = element.getAsJsonObject();
-                String name = destObject.get("name").getAsString();
-                if (name.equalsIgnoreCase(dest)) {
-                    return true;
-                }
-            }
+            byte[] body = ContentEncoding.encode(page.body, encoding);
+            String etag = ContentEncoding.etag(page.etag, encoding);
+            return new ResponseCache.Page(pageHead(page.contentType, encoding, body.length, page.lastModified, etag),
+                    body, page.contentType, page.lastModified, page.lastModifiedSeconds, etag);
         } catch (IOException e) {
-            System.err.println("Error reading JSON file: " + e.getMessage());
+            throw new UncheckedIOException(e);
         }
-        return false;
     }
 
-    private void sendDetail(Socket clientSocket, String dest, String cookie, Map<String, String> headers)
+    private void sendPage(OutputStream O, boolean keepAlive, ResponseCache.Page page, String cookie)
             throws IOException {
-        OutputStream O = clientSocket.getOutputStream();
-        String filePath = "resources/detail.html";
-        File file = new File(filePath);
-        String lastModified = getLastModifiedTime(filePath);
-        // modified;
-        String ifModifiedSince = headers.get("If-Modified-Since");
-        if (ifModifiedSince != null && lastModified != null && isNotModified(ifModifiedSince, lastModified)) {
-            sendNotModifiedResponse(O);
-            clientSocket.close();
+        O.write(page.headerPrefix);
+        String perRequest = (cookieFeature ? "Set-Cookie: UserId=" + cookie + "\r\n" : "") +
+                connectionHeader(keepAlive) +
+                "\r\n";
+        O.write(perRequest.getBytes());
+        O.write(page.body);
+    }
+
+    private int sendImgResponse(OutputStream O, boolean keepAlive, String path, String userId, Map<String, String> headers)
+            throws IOException {
+        FileMetadataCache.Metadata file = files.get("resources/pictures/" + path);
+        if (file == null)
+            return send404(O, keepAlive, userId);
+        if (isNotModified(headers, file.etag, file.lastModifiedSeconds))
+            return sendNotModifiedResponse(O, keepAlive, file.etag);
+        String cookieHeader = cookieFeature ? "Set-Cookie: UserId=" + userId + "\r\n" : "";
+        // 끊긴 다운로드는 Range로 이어서 받음
+        List<HttpRange> ranges = HttpRange.requested(headers, file.length, file.etag, file.lastModifiedSeconds);
+        if (ranges != null)
+            return sendRanges(O, keepAlive, file, "image/jpeg", cookieHeader, ranges);
+
+        String responseHeader = "HTTP/1.1 200 OK\r\n" +
+                "Content-Type: image/jpeg\r\n" +
+                "Content-Length: " + file.length + "\r\n" +
+                cookieHeader +
+                // "Date: " + getCurrentTime() + "\r\n" +
+                "Last-Modified: " + file.lastModified + "\r\n" +
+                "ETag: " + file.etag + "\r\n" +
+                "Accept-Ranges: bytes\r\n" +
+                connectionHeader(keepAlive) +
+                "\r\n";
+        O.write(responseHeader.getBytes());
+
+        sendFileBody(O, file, 0, file.length);
+        Log.debug("HTTP 200 OK /pictures/{}", path);
+        return 200;
+    }
+
+    /**
+     * 206 with the requested ranges of {@code file}: one range as the body itself, several as
+     * multipart/byteranges. 416 if none of them lies within the file.
+     */
+    private int sendRanges(OutputStream O, boolean keepAlive, FileMetadataCache.Metadata file, String contentType,
+            String extraHeaders, List<HttpRange> ranges) throws IOException {
+        if (ranges.isEmpty()) {
+            O.write(HttpRange.notSatisfiable(file.length, connectionHeader(keepAlive)).getBytes());
+            Log.debug("HTTP 416 Range Not Satisfiable: {}", file.path);
+            return 416;
+        }
+        HttpRange single = ranges.size() == 1 ? ranges.get(0) : null;
+        String responseHeader = "HTTP/1.1 206 Partial Content\r\n" +
+                (single != null
+                        ? "Content-Type: " + contentType + "\r\n" +
+                                "Content-Range: " + single.contentRange(file.length) + "\r\n" +
+                                "Content-Length: " + single.length() + "\r\n"
+                        : "Content-Type: multipart/byteranges; boundary=" + HttpRange.BOUNDARY + "\r\n" +
+                                "Content-Length: " + HttpRange.multipartLength(ranges, file.length, contentType)
+                                + "\r\n") +
+                extraHeaders +
+                "Last-Modified: " + file.lastModified + "\r\n" +
+                "ETag: " + file.etag + "\r\n" +
+                "Accept-Ranges: bytes\r\n" +
+                connectionHeader(keepAlive) +
+                "\r\n";
+        O.write(responseHeader.getBytes());
+        if (single != null) {
+            sendFileBody(O, file, single.first, single.length());
+        } else {
+            HttpRange.writeMultipart(O, ranges, file.length, contentType,
+                    (position, count) -> sendFileBody(O, file, position, count));
+        }
+        Log.debug("HTTP 206 Partial Content: {} ({} ranges)", file.path, ranges.size());
+        return 206;
+    }
+
+    /**
+     * Sends {@code count} bytes of the file from {@code position}. Zero-copy when the output
+     * supports file regions (channel backed sockets, NIO engine), otherwise the file is copied
+     * through an 8 KB buffer. Sends exactly the length announced in Content-Length, even if the
+     * file changed since its metadata was read.
+     */
+    private static void sendFileBody(OutputStream O, FileMetadataCache.Metadata file, long position, long count)
+            throws IOException {
+        if (O instanceof FileRegionOutput) {
+            ((FileRegionOutput) O).sendFile(file.path, position, count);
             return;
         }
-        if (file.exists()) {
-
-            JsonObject Obj = getDestinationsData();
-            JsonArray Arr = Obj.getAsJsonArray("destinations");
-            String type = "", description = "", img = "";
-            for (JsonElement element : Arr) {
-                JsonObject destObject = element.getAsJsonObject();
-
-                if (destObject.get("name").getAsString().equals(dest)) {
-                    type = destObject.get("type").getAsString();
-                    description = destObject.get("description").getAsString();
-                    // System.out.println("detail , descrp : "+description);
-                    img = destObject.get("image").getAsString().replace("//", "/");
-                }
+        try (SeekableByteChannel in = Files.newByteChannel(file.path)) {
+            in.position(position);
+            byte[] buffer = new byte[8192];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            long remaining = count;
+            while (remaining > 0) {
+                wrapped.clear().limit((int) Math.min(buffer.length, remaining));
+                int bytesRead = in.read(wrapped);
+                if (bytesRead == -1)
+                    throw new EOFException("File truncated while sending: " + file.path);
+                O.write(buffer, 0, bytesRead);
+                remaining -= bytesRead;
+            }
+        }
+    }
+
+    private int sendDetail(OutputStream O, boolean keepAlive, DestinationCatalog.Destination dest, String cookie,
+            Map<String, String> headers) throws IOException {
+        ResponseCache.Page page = pageCache.get("/" + dest.slug, () -> renderDetailPage(dest));
+        if (page == null)
+            return send404(O, keepAlive, cookie);
+        page = negotiate(page, headers);
+        // modified;
+        if (isNotModified(headers, page.etag, page.lastModifiedSeconds))
+            return sendNotModifiedResponse(O, keepAlive, page.etag);
+        sendPage(O, keepAlive, page, cookie);
+        Log.debug("HTTP 200 OK /{}", dest.name);
+        return 200;
+    }
+
+    private ResponseCache.Page renderDetailPage(DestinationCatalog.Destination dest) throws IOException {
+        FileMetadataCache.Metadata template = files.get("resources/detail.html");
+        if (template == null)
+            return null;
+        ByteArrayOutputStream body = new ByteArrayOutputStream(2048);
+        DETAIL_TEMPLATE.render(body, dest.name, dest.type, dest.description, dest.image);
+        return buildPage("text/html", body.toByteArray(), template);
+    }
 
+    /**
+     * Renders every category and detail page ahead of the first request and compresses them and
+     * index.html with gzip and deflate.
+     */
+    public void warmPageCache() throws IOException {
+        DestinationCatalog current = catalog.get();
+        List<ResponseCache.Page> pages = new ArrayList<>();
+        for (String type : current.types()) {
+            pages.add(pageCache.get("/" + type, () -> renderDestPage(type)));
+        }
+        for (DestinationCatalog.Destination dest : current.all()) {
+            pages.add(pageCache.get("/" + dest.slug, () -> renderDetailPage(dest)));
+        }
+        FileMetadataCache.Metadata index = files.get("resources/index.html");
+        for (String encoding : new String[] { ContentEncoding.GZIP, ContentEncoding.DEFLATE }) {
+            Map<String, String> accept = Map.of("Accept-Encoding", encoding);
+            for (ResponseCache.Page page : pages) {
+                if (page != null)
+                    negotiate(page, accept);
             }
-            String HTMLstring = new String(Files.readAllBytes(Paths.get("resources/detail.html")));
-            HTMLstring = HTMLstring.replace("TRAVEL DESTINATION TITLE", dest);
-            HTMLstring = HTMLstring.replace("TRAVEL DESTINATION TYPE", type);
-            HTMLstring = HTMLstring.replace("TRAVEL DESTINATION DESCRIPTION", description);
-            HTMLstring = HTMLstring.replace("IMAGE SRC", img);
-
-            String responseHeader = "HTTP/1.1 200 OK\r\n" +
-                    "Content-Type: text/html\r\n" +
-                    "Content-Length: " + HTMLstring.length() + "\r\n" +
-                    (cookieFeature ? "Set-Cookie: UserId=" + cookie + "\r\n" : "") +
-                    (cookieFeature ? "Cache-Control: no-store\r\n" : "Cache-Control: max-age=60\r\n") +
-                    // "Date: " + getCurrentTime() + "\r\n" +
-                    (lastModified != null ? "Last-Modified: " + lastModified + "\r\n" : "") +
-                    "\r\n";
-            O.write(responseHeader.getBytes());
-
-            O.write(HTMLstring.getBytes());
-            System.out.println("HTTP 200 OK /" + dest);
-            clientSocket.close();
-        } else
-            send404(clientSocket, cookie);
+            if (index != null && compressedFiles.covers(index))
+                compressedFiles.get(index, encoding);
+        }
     }
 
-    private void Redirect(Socket clientSocket, String lastLoc) throws IOException {
-        OutputStream O = clientSocket.getOutputStream();
+    private int Redirect(OutputStream O, boolean keepAlive, String lastLoc) throws IOException {
         if (!lastLoc.startsWith("/")) {
             lastLoc = "/" + lastLoc;
         }
         String responseHeader = "HTTP/1.1 302 Found\r\n" +
                 "Location: " + lastLoc + "\r\n" +
+                "Content-Length: 0\r\n" +
+                connectionHeader(keepAlive) +
                 "\r\n";
 
-        System.out.println("HTTP 302 Found " + lastLoc);
+        Log.debug("HTTP 302 Found {}", lastLoc);
         O.write(responseHeader.getBytes());
-        clientSocket.close();
+        return 302;
     }
 
-    private boolean isNotModified(String ifModifiedSince, String lastModified) {
-        try {
-            SimpleDateFormat formatter = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH);
-            formatter.setTimeZone(TimeZone.getTimeZone("GMT"));
-            Date ifModifiedSinceDate = formatter.parse(ifModifiedSince);
-            Date lastModifiedDate = formatter.parse(lastModified);
-            return !lastModifiedDate.after(ifModifiedSinceDate);
-        } catch (ParseException e) {
-            e.printStackTrace();
+    /**
+     * True if the client's copy is current. If-None-Match is compared with {@code etag} and, when
+     * present, decides alone (RFC 7232 section 6); otherwise If-Modified-Since is compared with
+     * {@code lastModifiedSeconds}, -1 if unknown.
+     */
+    static boolean isNotModified(Map<String, String> headers, String etag, long lastModifiedSeconds) {
+        String ifNoneMatch = headers.get("If-None-Match");
+        if (ifNoneMatch != null)
+            return etag != null && etagMatches(ifNoneMatch, etag);
+        String ifModifiedSince = headers.get("If-Modified-Since");
+        if (ifModifiedSince == null || lastModifiedSeconds < 0)
             return false;
-        }
+        long since = HttpDate.parse(ifModifiedSince);
+        return since >= 0 && lastModifiedSeconds <= since;
     }
 
-    private void send404(Socket clientSocket, String cookie) throws IOException {
-        OutputStream O = clientSocket.getOutputStream();
+    /** Weak comparison of {@code etag} with a list such as {@code "a", W/"b"} or {@code *}. */
+    static boolean etagMatches(String list, String etag) {
+        int i = 0, n = list.length();
+        while (i < n) {
+            while (i < n && (list.charAt(i) == ' ' || list.charAt(i) == ','))
+                i++;
+            int end = list.indexOf(',', i);
+            if (end < 0)
+                end = n;
+            int to = end;
+            while (to > i && list.charAt(to - 1) == ' ')
+                to--;
+            int from = list.startsWith("W/", i) ? i + 2 : i;
+            if (to - from == 1 && list.charAt(from) == '*')
+                return true;
+            if (to - from == etag.length() && list.startsWith(etag, from))
+                return true;
+            i = end + 1;
+        }
+        return false;
+    }
 
+    private int send404(OutputStream O, boolean keepAlive, String cookie) throws IOException {
         String responseHeader = "HTTP/1.1 404 Not Found\r\n" +
                 "Content-Type: text/html\r\n" +
+                "Content-Length: 0\r\n" +
                 (cookieFeature ? "Set-Cookie: UserId=" + cookie + "\r\n" : "") +
+                connectionHeader(keepAlive) +
+                "\r\n";
+        O.write(responseHeader.getBytes());
+        Log.debug("HTTP 404 Not Found");
+        return 404;
+    }
+
+    private int sendMetrics(OutputStream O, boolean keepAlive) throws IOException {
+        byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+        String responseHeader = "HTTP/1.1 200 OK\r\n" +
+                "Content-Type: text/plain; version=0.0.4\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                "Cache-Control: no-store\r\n" +
+                connectionHeader(keepAlive) +
                 "\r\n";
         O.write(responseHeader.getBytes());
-        System.out.println("HTTP 404 Not Found");
-        clientSocket.close();
+        O.write(body);
+        return 200;
     }
 
-    private static void sendNotModifiedResponse(OutputStream out) throws IOException {
-        String response = "HTTP/1.1 304 Not Modified\r\n\r\n";
+    private static int sendNotModifiedResponse(OutputStream out, boolean keepAlive, String etag) throws IOException {
+        String response = "HTTP/1.1 304 Not Modified\r\n" +
+                (etag != null ? "ETag: " + etag + "\r\n" : "") +
+                connectionHeader(keepAlive) + "\r\n";
         out.write(response.getBytes());
-        out.flush();
-        System.out.println("[WebServer] Resource not modified.");
+        Log.debug("[WebServer] Resource not modified.");
+        return 304;
     }
 
-    public static String getLastModifiedTime(String filePath) {
-        try {
-            Path path = Paths.get(filePath);
-            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
-            FileTime fileTime = attrs.lastModifiedTime();
-
-            // HTTP 헤더용 날짜 형식으로 변환
-            SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH);
-            httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-            return httpDateFormat.format(fileTime.toMillis());
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
+    private static String connectionHeader(boolean keepAlive) {
+        return keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n";
     }
 
     public static void main(String[] args) {
@@ -413,16 +776,63 @@ public class WebServer {
                 System.err.println("Server failed to start: " + e.getMessage());
             }
         } else {
+            // 요청 처리 스레드 설정
+            boolean platformThreads = false;
+            int threads = Runtime.getRuntime().availableProcessors() * 16;
+            int keepAliveTimeout = 5000, maxRequests = 100;
+            boolean nio = false;
+            boolean warmCache = false;
+            String accessLog = null;
+            int maxSessions = DEFAULT_MAX_SESSIONS;
+            long sessionTtl = DEFAULT_SESSION_TTL / 1000;
+            String sessionFile = null;
             for (int i = 0; i < args.length; i++) {
                 if (args[i].equals("--cookie=off")) {
                     cookieOpt = false;
                 } else if (args[i].equals("--cookie=on")) {
                     cookieOpt = true;
+                } else if (args[i].equals("--executor=platform")) {
+                    platformThreads = true;
+                } else if (args[i].equals("--executor=virtual")) {
+                    platformThreads = false;
+                } else if (args[i].startsWith("--threads=")) {
+                    threads = Integer.parseInt(args[i].substring(10));
+                } else if (args[i].startsWith("--keepalive-timeout=")) {
+                    keepAliveTimeout = Integer.parseInt(args[i].substring(20));
+                } else if (args[i].equals("--warm-cache")) {
+                    warmCache = true;
+                } else if (args[i].equals("--engine=nio")) {
+                    nio = true;
+                } else if (args[i].equals("--engine=blocking")) {
+                    nio = false;
+                } else if (args[i].startsWith("--max-requests=")) {
+                    maxRequests = Integer.parseInt(args[i].substring(15));
+                } else if (args[i].startsWith("--log-level=")) {
+                    Log.setLevel(args[i].substring(12));
+                } else if (args[i].startsWith("--access-log=")) {
+                    accessLog = args[i].substring(13);
+                } else if (args[i].startsWith("--max-sessions=")) {
+                    maxSessions = Integer.parseInt(args[i].substring(15));
+                } else if (args[i].startsWith("--session-ttl=")) {
+                    sessionTtl = Long.parseLong(args[i].substring(14));
+                } else if (args[i].startsWith("--session-snapshot=")) {
+                    sessionFile = args[i].substring(19);
                 }
             }
             try {
-                WebServer server = new WebServer(portNum, cookieOpt);
-                server.start();
+                if (accessLog != null)
+                    Log.setAccessLog(accessLog);
+                ExecutorService executor = platformThreads ? newPlatformExecutor(threads) : newVirtualThreadExecutor();
+                WebServer server = new WebServer(portNum, cookieOpt, executor, maxSessions, sessionTtl * 1000);
+                server.setKeepAlive(keepAliveTimeout, maxRequests);
+                if (sessionFile != null)
+                    server.enableSessionSnapshots(Paths.get(sessionFile));
+                if (warmCache)
+                    server.warmPageCache();
+                if (nio)
+                    server.startNio(Runtime.getRuntime().availableProcessors());
+                else
+                    server.start();
             } catch (IOException e) {
                 System.err.println("Server failed to start: " + e.getMessage());
             }
@@ -0,0 +1,76 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compares the old 8 KB FileInputStream copy loop with the transferTo path of
+ * {@link ChannelOutputStream} by sending a picture repeatedly over a loopback connection.
+ *
+ * Usage: java FileSendBenchmark [file] [iterations]
+ */
+public class FileSendBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Path file = Paths.get(args.length > 0 ? args[0] : "resources/pictures/paris.jpg");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        // warm up both paths before measuring
+        run(file, iterations / 5, false);
+        run(file, iterations / 5, true);
+
+        double buffered = run(file, iterations, false);
+        double zeroCopy = run(file, iterations, true);
+        System.out.printf("buffered copy : %8.1f MB/s%n", buffered);
+        System.out.printf("transferTo    : %8.1f MB/s%n", zeroCopy);
+    }
+
+    private static double run(Path file, int iterations, boolean zeroCopy) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            Thread drain = new Thread(() -> {
+                try (SocketChannel in = server.accept()) {
+                    ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+                    while (in.read(buf) != -1) {
+                        buf.clear();
+                    }
+                } catch (IOException e) {
+                    System.err.println("drain failed: " + e.getMessage());
+                }
+            });
+            drain.start();
+
+            long length = file.toFile().length();
+            long start = System.nanoTime();
+            try (SocketChannel channel = SocketChannel.open(server.getLocalAddress())) {
+                Socket socket = channel.socket();
+                if (zeroCopy) {
+                    ChannelOutputStream out = new ChannelOutputStream(channel);
+                    for (int i = 0; i < iterations; i++) {
+                        out.sendFile(file, 0, length);
+                    }
+                    out.flush();
+                } else {
+                    OutputStream out = socket.getOutputStream();
+                    byte[] buffer = new byte[8192];
+                    for (int i = 0; i < iterations; i++) {
+                        try (FileInputStream in = new FileInputStream(file.toFile())) {
+                            int bytesRead;
+                            while ((bytesRead = in.read(buffer)) != -1) {
+                                out.write(buffer, 0, bytesRead);
+                            }
+                        }
+                    }
+                    out.flush();
+                }
+            }
+            drain.join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return length * (double) iterations / (1024 * 1024) / seconds;
+        }
+    }
+}
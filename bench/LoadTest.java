@@ -0,0 +1,404 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test on localhost. Starts {@link WebServer} and {@link ProxyServer} as child
+ * JVMs on free ports, then drives them with closed-loop virtual users, first directly and then
+ * through the proxy, with keep-alive on and off. The results are printed per run and then side by
+ * side, with the proxy compared to the direct run with the same keep-alive setting.
+ *
+ * Every user sends a random mix of / (10%), /mountains (20%), /Swiss-Alps (30%) and
+ * /pictures/*.jpg (40%), and replays the UserId cookie it was given, so / takes the returning-user
+ * redirect. After --session-requests requests the user forgets its cookie and starts over as a
+ * new visitor. The proxy does not forward cookies, so through the proxy / is always the new-visitor
+ * page (404 without resources/index.html).
+ *
+ * Latency is measured from writing the request to reading the last body byte and kept in a
+ * {@link Metrics.Histogram} (about 6% resolution). Users wait for each response before sending
+ * the next request, so a stalled server also slows the load (coordinated omission): compare the
+ * percentiles between runs, not against an arrival-rate SLO. Errors are failed connections,
+ * timeouts, malformed responses and 5xx. 4xx responses are counted per status but are not errors.
+ *
+ * Run from the repository root, since the servers read resources/ from the working directory:
+ *
+ *   java -cp out:libs/gson-2.11.0.jar LoadTest [--concurrency=32] [--duration=10] [--warmup=3]
+ *        [--keepalive=both|on|off] [--target=both|direct|proxy] [--session-requests=20] [--seed=1]
+ *        [--web-port=0] [--proxy-port=0] [--web-arg=--engine=nio ...] [--proxy-arg=... ...]
+ *
+ * Ports 0 pick free ports. --web-arg and --proxy-arg may be repeated and are passed to the servers.
+ * Server output goes to loadtest-web.log and loadtest-proxy.log in the temp directory.
+ */
+public class LoadTest {
+    private static final String[] PAGES = { "/", "/mountains", "/Swiss-Alps" };
+    // PAGES 각각과 사진 전체의 누적 비율 (%)
+    private static final int[] CUMULATIVE_WEIGHTS = { 10, 30, 60, 100 };
+    private static final int SOCKET_TIMEOUT = 10_000;
+
+    private static final List<Process> children = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = 32;
+        int durationSeconds = 10, warmupSeconds = 3;
+        int sessionRequests = 20;
+        long seed = 1;
+        int webPort = 0, proxyPort = 0;
+        String keepAlive = "both", target = "both";
+        List<String> webArgs = new ArrayList<>(), proxyArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--concurrency=")) {
+                concurrency = Integer.parseInt(arg.substring(14));
+            } else if (arg.startsWith("--duration=")) {
+                durationSeconds = Integer.parseInt(arg.substring(11));
+            } else if (arg.startsWith("--warmup=")) {
+                warmupSeconds = Integer.parseInt(arg.substring(9));
+            } else if (arg.startsWith("--keepalive=")) {
+                keepAlive = arg.substring(12);
+            } else if (arg.startsWith("--target=")) {
+                target = arg.substring(9);
+            } else if (arg.startsWith("--session-requests=")) {
+                sessionRequests = Integer.parseInt(arg.substring(19));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring(7));
+            } else if (arg.startsWith("--web-port=")) {
+                webPort = Integer.parseInt(arg.substring(11));
+            } else if (arg.startsWith("--proxy-port=")) {
+                proxyPort = Integer.parseInt(arg.substring(13));
+            } else if (arg.startsWith("--web-arg=")) {
+                webArgs.add(arg.substring(10));
+            } else if (arg.startsWith("--proxy-arg=")) {
+                proxyArgs.add(arg.substring(12));
+            } else {
+                System.err.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (!Files.isDirectory(Paths.get("resources"))) {
+            System.err.println("resources/ not found, run from the repository root");
+            return;
+        }
+        List<String> pictures;
+        try (Stream<Path> files = Files.list(Paths.get("resources/pictures"))) {
+            pictures = files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(".jpg")).sorted()
+                    .map(n -> "/pictures/" + n).collect(Collectors.toList());
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(LoadTest::stopServers, "loadtest-stop"));
+        webPort = webPort != 0 ? webPort : freePort();
+        List<String> web = new ArrayList<>(List.of(String.valueOf(webPort)));
+        web.addAll(webArgs);
+        startServer("WebServer", web, "loadtest-web.log", webPort);
+        boolean withProxy = !target.equals("direct");
+        if (withProxy) {
+            proxyPort = proxyPort != 0 ? proxyPort : freePort();
+            List<String> proxy = new ArrayList<>(List.of("--port=" + proxyPort, "--origin=localhost:" + webPort));
+            proxy.addAll(proxyArgs);
+            startServer("ProxyServer", proxy, "loadtest-proxy.log", proxyPort);
+        }
+
+        System.out.printf("concurrency=%d duration=%ds warmup=%ds session-requests=%d seed=%d pictures=%d%n",
+                concurrency, durationSeconds, warmupSeconds, sessionRequests, seed, pictures.size());
+        List<Result> results = new ArrayList<>();
+        for (String via : new String[] { "direct", "proxy" }) {
+            if (!target.equals("both") && !target.equals(via))
+                continue;
+            for (boolean ka : new boolean[] { true, false }) {
+                if (!keepAlive.equals("both") && keepAlive.equals("on") != ka)
+                    continue;
+                int port = via.equals("direct") ? webPort : proxyPort;
+                Result r = run(via, port, ka, concurrency, warmupSeconds, durationSeconds, sessionRequests, seed,
+                        pictures);
+                System.out.println(r.line());
+                results.add(r);
+            }
+        }
+        printSummary(results);
+        stopServers();
+    }
+
+    /** One measured run: a warm-up with the same load, then the counted period. */
+    private static Result run(String via, int port, boolean keepAlive, int concurrency, int warmupSeconds,
+            int durationSeconds, int sessionRequests, long seed, List<String> pictures)
+            throws InterruptedException {
+        Result result = new Result(via, keepAlive, concurrency);
+        long start = System.nanoTime();
+        long measureFrom = start + warmupSeconds * 1_000_000_000L;
+        long end = measureFrom + durationSeconds * 1_000_000_000L;
+        List<Thread> users = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            User user = new User(port, keepAlive, sessionRequests, new Random(seed * 1_000_003 + i), pictures);
+            Thread t = new Thread(() -> user.loop(result, measureFrom, end), "loadtest-user-" + i);
+            users.add(t);
+            t.start();
+        }
+        for (Thread t : users)
+            t.join();
+        result.seconds = durationSeconds;
+        return result;
+    }
+
+    /** A virtual user with its own connection and cookie. */
+    private static class User {
+        final int port;
+        final boolean keepAlive;
+        final int sessionRequests;
+        final Random random;
+        final List<String> pictures;
+        final byte[] buffer = new byte[64 * 1024];
+        Socket socket;
+        BufferedInputStream in;
+        OutputStream out;
+        String cookie;
+        int requestsInSession;
+
+        User(int port, boolean keepAlive, int sessionRequests, Random random, List<String> pictures) {
+            this.port = port;
+            this.keepAlive = keepAlive;
+            this.sessionRequests = sessionRequests;
+            this.random = random;
+            this.pictures = pictures;
+        }
+
+        void loop(Result result, long measureFrom, long end) {
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                if (++requestsInSession > sessionRequests) {
+                    // 새 방문자
+                    cookie = null;
+                    requestsInSession = 1;
+                }
+                String path = nextPath();
+                int status;
+                try {
+                    status = request(path);
+                } catch (IOException e) {
+                    status = -1;
+                    closeQuietly();
+                }
+                long done = System.nanoTime();
+                if (now >= measureFrom)
+                    result.record(status, (done - now) / 1000);
+            }
+            closeQuietly();
+        }
+
+        String nextPath() {
+            int r = random.nextInt(100);
+            for (int i = 0; i < PAGES.length; i++) {
+                if (r < CUMULATIVE_WEIGHTS[i])
+                    return PAGES[i];
+            }
+            return pictures.isEmpty() ? "/" : pictures.get(random.nextInt(pictures.size()));
+        }
+
+        /** Sends one GET and reads the whole response; returns the status. */
+        int request(String path) throws IOException {
+            if (socket == null) {
+                socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(SOCKET_TIMEOUT);
+                socket.connect(new InetSocketAddress("localhost", port), SOCKET_TIMEOUT);
+                in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+                out = socket.getOutputStream();
+            }
+            String request = "GET " + path + " HTTP/1.1\r\n" +
+                    "Host: localhost:" + port + "\r\n" +
+                    "User-Agent: LoadTest\r\n" +
+                    (cookie != null ? "Cookie: UserId=" + cookie + "\r\n" : "") +
+                    (keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n") +
+                    "\r\n";
+            out.write(request.getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            String statusLine = readLine();
+            if (statusLine == null || !statusLine.startsWith("HTTP/1.") || statusLine.length() < 12)
+                throw new IOException("Bad status line: " + statusLine);
+            int status = Integer.parseInt(statusLine.substring(9, 12));
+            long contentLength = -1;
+            boolean close = !keepAlive || statusLine.startsWith("HTTP/1.0");
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0)
+                    continue;
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    contentLength = Long.parseLong(value);
+                } else if (name.equalsIgnoreCase("Connection")) {
+                    close |= value.equalsIgnoreCase("close");
+                } else if (name.equalsIgnoreCase("Set-Cookie") && value.startsWith("UserId=")) {
+                    int semi = value.indexOf(';');
+                    cookie = value.substring(7, semi > 0 ? semi : value.length());
+                }
+            }
+            if (line == null)
+                throw new IOException("Connection closed in response head");
+            if (contentLength >= 0) {
+                skip(contentLength);
+            } else {
+                // 길이를 모르면 연결이 닫힐 때까지 읽음
+                while (in.read(buffer) != -1) {
+                }
+                close = true;
+            }
+            if (close)
+                closeQuietly();
+            return status;
+        }
+
+        private void skip(long length) throws IOException {
+            while (length > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+                if (n == -1)
+                    throw new EOFException("Connection closed with " + length + " body bytes missing");
+                length -= n;
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder(64);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    int len = line.length();
+                    if (len > 0 && line.charAt(len - 1) == '\r')
+                        line.setLength(len - 1);
+                    return line.toString();
+                }
+                line.append((char) b);
+            }
+            return line.length() == 0 ? null : line.toString();
+        }
+
+        private void closeQuietly() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+            socket = null;
+        }
+    }
+
+    private static class Result {
+        final String via;
+        final boolean keepAlive;
+        final int concurrency;
+        final Metrics.Histogram latency = new Metrics.Histogram();
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        int seconds;
+
+        Result(String via, boolean keepAlive, int concurrency) {
+            this.via = via;
+            this.keepAlive = keepAlive;
+            this.concurrency = concurrency;
+        }
+
+        void record(int status, long micros) {
+            requests.increment();
+            if (status < 0 || status >= 500)
+                errors.increment();
+            if (status >= 0)
+                statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            latency.record(micros);
+        }
+
+        double rps() {
+            return (double) requests.sum() / seconds;
+        }
+
+        double millis(double quantile) {
+            return Metrics.Histogram.quantileMicros(latency.snapshot(), quantile) / 1000.0;
+        }
+
+        String name() {
+            return String.format("%-6s keepalive=%-3s", via, keepAlive ? "on" : "off");
+        }
+
+        String line() {
+            StringBuilder s = new StringBuilder(name());
+            s.append(String.format(" requests=%d rps=%.0f p50=%.2fms p99=%.2fms p999=%.2fms errors=%d status",
+                    requests.sum(), rps(), millis(0.5), millis(0.99), millis(0.999), errors.sum()));
+            new TreeMap<>(statuses).forEach((status, count) -> s.append(' ').append(status).append('=')
+                    .append(count.sum()));
+            return s.toString();
+        }
+    }
+
+    private static void printSummary(List<Result> results) {
+        System.out.println();
+        System.out.printf("%-20s %10s %10s %10s %10s %8s %s%n", "run", "rps", "p50 ms", "p99 ms", "p999 ms",
+                "errors", "vs direct");
+        for (Result r : results) {
+            String comparison = "";
+            if (r.via.equals("proxy")) {
+                for (Result d : results) {
+                    if (d.via.equals("direct") && d.keepAlive == r.keepAlive) {
+                        comparison = String.format("rps x%.2f, p99 %+.2fms", r.rps() / d.rps(),
+                                r.millis(0.99) - d.millis(0.99));
+                    }
+                }
+            }
+            System.out.printf("%-20s %10.0f %10.2f %10.2f %10.2f %8d %s%n", r.name(), r.rps(), r.millis(0.5),
+                    r.millis(0.99), r.millis(0.999), r.errors.sum(), comparison);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    /** Starts {@code mainClass} in a child JVM with this classpath and waits until it accepts connections. */
+    private static void startServer(String mainClass, List<String> args, String logName, int port)
+            throws IOException, InterruptedException {
+        File log = new File(System.getProperty("java.io.tmpdir"), logName);
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.addAll(args);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.to(log)).start();
+        synchronized (children) {
+            children.add(process);
+        }
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive())
+                throw new IOException(mainClass + " exited with " + process.exitValue() + ", see " + log);
+            try (Socket probe = new Socket()) {
+                probe.connect(new InetSocketAddress("localhost", port), 500);
+                System.out.println(mainClass + " on port " + port + " (" + String.join(" ", args) + "), log " + log);
+                return;
+            } catch (IOException notYet) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IOException(mainClass + " did not start listening on port " + port + ", see " + log);
+    }
+
+    private static void stopServers() {
+        synchronized (children) {
+            for (Process p : children)
+                p.destroy();
+            children.clear();
+        }
+    }
+}
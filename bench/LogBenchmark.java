@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the cost per request-path log call of System.out.println with {@link Log}. Several
+ * threads each log the lines one request used to print (request line, route, response status)
+ * as fast as they can. Log output goes to /dev/null; result lines start with "#":
+ *
+ *   java LogBenchmark [threads] [requestsPerThread] 2>&1 >/dev/null | grep '^#'
+ *
+ * At this rate the ring fills up: "log-info" mostly measures dropping
+ * INFO messages, "log-warn" (never dropped) how fast the writer thread keeps up, and
+ * "log-debug-off" the same calls at DEBUG with DEBUG disabled.
+ */
+public class LogBenchmark {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        for (int round = 0; round < 2; round++) {
+            run("system-out", threads, requests, LogBenchmark::systemOut);
+            run("log-info", threads, requests, LogBenchmark::logInfo);
+            run("log-warn", threads, requests, LogBenchmark::logWarn);
+            run("log-debug-off", threads, requests, LogBenchmark::logDebug);
+        }
+        System.err.println("# log messages dropped (ring full): " + Log.dropped());
+    }
+
+    private static void systemOut(int i) {
+        System.out.println("Request: GET /detail" + i + " HTTP/1.1");
+        System.out.println("Detail page requested");
+        System.out.println("HTTP 200 OK /detail" + i);
+    }
+
+    private static void logInfo(int i) {
+        Log.info("Request: GET /detail{} HTTP/1.1", i);
+        Log.info("Detail page requested");
+        Log.info("HTTP 200 OK /detail{}", i);
+    }
+
+    private static void logWarn(int i) {
+        Log.warn("Request: GET /detail{} HTTP/1.1", i);
+        Log.warn("Detail page requested");
+        Log.warn("HTTP 200 OK /detail{}", i);
+    }
+
+    private static void logDebug(int i) {
+        Log.debug("Request: GET /detail{} HTTP/1.1", i);
+        Log.debug("Detail page requested");
+        Log.debug("HTTP 200 OK /detail{}", i);
+    }
+
+    private static void run(String name, int threads, int requests, java.util.function.IntConsumer request)
+            throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < requests; i++)
+                    request.accept(i);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        long elapsed = System.nanoTime() - start;
+        long total = (long) threads * requests;
+        System.err.printf("# %-14s threads=%d requests=%d time=%dms %.0f ns/request%n", name, threads, total,
+                elapsed / 1_000_000, (double) elapsed / total);
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares GC behaviour of a {@link ProxyCache} full of heap bodies with one whose bodies live in a
+ * {@link SlabAllocator}. Worker threads serve random URLs from the cache, replace some entries as
+ * if they had expired, and allocate some per-request garbage. Reports GC count and time, the
+ * longest stall seen by a thread that sleeps 1 ms in a loop, and request latency percentiles.
+ *
+ * Each mode runs in its own JVM so one does not warm the heap for the other.
+ *
+ * Usage: java OffHeapGcBenchmark [cacheMB] [seconds]           (runs both modes)
+ *        java OffHeapGcBenchmark heap|offheap [cacheMB] [seconds]
+ */
+public class OffHeapGcBenchmark {
+    private static final int THREADS = 4;
+    private static final int URLS = 4000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || !(args[0].equals("heap") || args[0].equals("offheap"))) {
+            String cacheMb = args.length > 0 ? args[0] : "512";
+            String seconds = args.length > 1 ? args[1] : "20";
+            for (String mode : new String[] { "heap", "offheap" }) {
+                Process p = new ProcessBuilder(ProcessHandle.current().info().command().orElse("java"),
+                        "-Xmx1g", "-XX:MaxDirectMemorySize=2g", "-cp", System.getProperty("java.class.path"),
+                        "OffHeapGcBenchmark", mode, cacheMb, seconds).inheritIO().start();
+                p.waitFor();
+            }
+            return;
+        }
+        boolean offHeap = args[0].equals("offheap");
+        long cacheBytes = (args.length > 1 ? Long.parseLong(args[1]) : 512) * 1024 * 1024;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+        SlabAllocator allocator = offHeap ? new SlabAllocator(cacheBytes * 2) : null;
+        ProxyCache cache = new ProxyCache(cacheBytes, 100_000, 60_000);
+        byte[] source = new byte[512 * 1024];
+        ThreadLocalRandom.current().nextBytes(source);
+        for (int i = 0; i < URLS; i++) {
+            CachedPage page = newPage(source, allocator);
+            cache.put("/page" + i, page);
+            page.release();
+        }
+
+        AtomicLong maxStall = new AtomicLong();
+        Thread stallMeter = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long start = System.nanoTime();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long stall = System.nanoTime() - start - 1_000_000;
+                maxStall.accumulateAndGet(stall, Math::max);
+            }
+        });
+        stallMeter.setDaemon(true);
+
+        long gcCountBefore = gcCount(), gcTimeBefore = gcTime();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<long[]> latencies = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        stallMeter.start();
+        for (int t = 0; t < THREADS; t++) {
+            long[] samples = new long[2_000_000];
+            latencies.add(samples);
+            Thread worker = new Thread(() -> {
+                OutputStream out = new DiscardOutput();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int n = 0;
+                while (System.nanoTime() < deadline && n < samples.length) {
+                    long start = System.nanoTime();
+                    String url = "/page" + random.nextInt(URLS);
+                    // 요청마다 생기는 쓰레기 (헤더 파싱 등)
+                    byte[] garbage = new byte[2048];
+                    garbage[random.nextInt(garbage.length)] = 1;
+                    CachedPage page = cache.get(url);
+                    if (page == null || random.nextInt(100) < 5) {
+                        page = newPage(source, allocator);
+                        cache.put(url, page);
+                    } else if (!page.retain()) {
+                        continue;
+                    }
+                    try {
+                        page.writeBody(out);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        page.release();
+                    }
+                    samples[n++] = System.nanoTime() - start;
+                }
+                samples[samples.length - 1] = n;
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        stallMeter.interrupt();
+
+        long total = 0;
+        for (long[] samples : latencies)
+            total += samples[samples.length - 1];
+        long[] all = new long[(int) total];
+        int pos = 0;
+        for (long[] samples : latencies) {
+            int n = (int) samples[samples.length - 1];
+            System.arraycopy(samples, 0, all, pos, n);
+            pos += n;
+        }
+        Arrays.sort(all);
+        System.out.printf("%-8s requests=%d gcCount=%d gcTime=%dms maxStall=%.1fms p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fms heapUsed=%dMB%s%n",
+                args[0], total, gcCount() - gcCountBefore, gcTime() - gcTimeBefore, maxStall.get() / 1e6,
+                all[(int) (total * 0.50)] / 1e3, all[(int) (total * 0.99)] / 1e3, all[(int) (total * 0.999)] / 1e3,
+                all[all.length - 1] / 1e6,
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024),
+                allocator != null ? " " + allocator : "");
+    }
+
+    private static CachedPage newPage(byte[] source, SlabAllocator allocator) {
+        // 4KB ~ 512KB, 작은 페이지가 많고 큰 이미지가 가끔
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = random.nextInt(10) < 8 ? 4096 + random.nextInt(60 * 1024) : 128 * 1024 + random.nextInt(384 * 1024);
+        // ProxyServer.fillBody 처럼 8KB씩 채움
+        CachedPage page = new CachedPage("HTTP/1.1 200 OK\r\nContent-Length: " + size + "\r\n", size, null, 60_000,
+                allocator);
+        for (int pos = 0; pos < size; pos += 8192)
+            page.append(source, pos, Math.min(8192, size - pos));
+        page.finish();
+        return page;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += gc.getCollectionCount();
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += gc.getCollectionTime();
+        return time;
+    }
+
+    /** Stands in for a socket channel: heap bytes and off-heap buffers are both just consumed. */
+    private static class DiscardOutput extends OutputStream implements ByteBufferOutput {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+
+        @Override
+        public void sendBuffers(ByteBuffer... buffers) {
+            for (ByteBuffer buffer : buffers) {
+                bytes += buffer.remaining();
+                buffer.position(buffer.limit());
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Renders detail.html with the old chain of String.replace calls and with {@link Template},
+ * reporting the average time per render.
+ *
+ * Usage: java TemplateBenchmark [iterations]
+ */
+public class TemplateBenchmark {
+    private static final String TITLE = "Swiss Alps";
+    private static final String TYPE = "mountains";
+    private static final String DESCRIPTION = "A scenic mountainous region perfect for skiing and snowboarding.";
+    private static final String IMAGE = "pictures/swissAlps.jpg";
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path path = Paths.get("resources/detail.html");
+        byte[] source = Files.readAllBytes(path);
+        Template template = new Template(path,
+                "TRAVEL DESTINATION TITLE", "TRAVEL DESTINATION TYPE", "TRAVEL DESTINATION DESCRIPTION", "IMAGE SRC");
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+
+        long sink = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                // 기존 방식: 템플릿을 읽고 replace 네 번
+                String html = new String(source);
+                html = html.replace("TRAVEL DESTINATION TITLE", TITLE);
+                html = html.replace("TRAVEL DESTINATION TYPE", TYPE);
+                html = html.replace("TRAVEL DESTINATION DESCRIPTION", DESCRIPTION);
+                html = html.replace("IMAGE SRC", IMAGE);
+                sink += html.getBytes().length;
+            }
+            long replaceNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                out.reset();
+                template.render(out, TITLE, TYPE, DESCRIPTION, IMAGE);
+                sink += out.size();
+            }
+            long templateNanos = System.nanoTime() - start;
+
+            if (round == 1) {
+                System.out.printf("String.replace chain : %7.1f ns/render%n", replaceNanos / (double) iterations);
+                System.out.printf("Template.render      : %7.1f ns/render%n", templateNanos / (double) iterations);
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+}
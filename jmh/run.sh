@@ -0,0 +1,11 @@
+#!/bin/sh
+# JMH 실행, 결과는 jmh/results/<git describe>.json 에 JMH JSON 형식으로 저장
+#   jmh/run.sh                          전체
+#   jmh/run.sh RequestPath -f 1 -i 3    벤치마크 이름(정규식)과 JMH 옵션
+# 두 결과 비교: jq '.[] | {benchmark, params, score: .primaryMetric.score}' jmh/results/<version>.json
+set -e
+cd "$(dirname "$0")/.."
+[ -f jmh/target/benchmarks.jar ] || mvn -B -q -f jmh/pom.xml package
+version=$(git describe --always --dirty 2>/dev/null || echo unknown)
+mkdir -p jmh/results
+exec java -jar jmh/target/benchmarks.jar -rf json -rff "jmh/results/$version.json" "$@"
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Request head parsing as the servers do it per request: the request line and headers, then the
+ * lookups handleGet makes (Connection, Cookie, If-Modified-Since). {@code HttpRequestParser} is
+ * compared with the InputStreamReader/BufferedReader + readLine + TreeMap loop every server used
+ * before it, kept here as the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderParsingBenchmark {
+    private static final MethodHandle NEW_PARSER = Targets.constructor("HttpRequestParser");
+    private static final MethodHandle READ_FROM = Targets.virtualMethod("HttpRequestParser", "readFrom",
+            Targets.methodType(boolean.class, InputStream.class),
+            Targets.methodType(boolean.class, Object.class, InputStream.class));
+    private static final MethodHandle HEADER = Targets.virtualMethod("HttpRequestParser", "header",
+            Targets.methodType(String.class, String.class),
+            Targets.methodType(String.class, Object.class, String.class));
+    private static final MethodHandle TARGET = Targets.virtualMethod("HttpRequestParser", "target",
+            Targets.methodType(String.class),
+            Targets.methodType(String.class, Object.class));
+    private static final MethodHandle NEXT = Targets.virtualMethod("HttpRequestParser", "next",
+            Targets.methodType(void.class),
+            Targets.methodType(void.class, Object.class));
+
+    static final String CURL = "GET /mountains HTTP/1.1\r\n" +
+            "Host: localhost:8080\r\n" +
+            "User-Agent: curl/8.5.0\r\n" +
+            "Accept: */*\r\n" +
+            "\r\n";
+
+    static final String BROWSER = "GET /Swiss-Alps HTTP/1.1\r\n" +
+            "Host: localhost:8080\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Cache-Control: max-age=0\r\n" +
+            "Upgrade-Insecure-Requests: 1\r\n" +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) "
+            + "Chrome/126.0.0.0 Safari/537.36\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8\r\n" +
+            "Referer: http://localhost:8080/mountains\r\n" +
+            "Accept-Encoding: gzip, deflate, br\r\n" +
+            "Accept-Language: ko-KR,ko;q=0.9,en-US;q=0.8,en;q=0.7\r\n" +
+            "Cookie: _ga=GA1.1.1234567890.1700000000; UserId=483920175; theme=dark\r\n" +
+            "If-Modified-Since: Tue, 14 May 2024 08:12:31 GMT\r\n" +
+            "\r\n";
+
+    @Param({ "curl", "browser" })
+    public String request;
+
+    private ByteArrayInputStream in;
+    // keep-alive 연결처럼 같은 parser를 계속 씀
+    private Object parser;
+
+    @Setup
+    public void setup() throws Throwable {
+        in = new ByteArrayInputStream((request.equals("curl") ? CURL : BROWSER).getBytes(StandardCharsets.ISO_8859_1));
+        parser = (Object) NEW_PARSER.invokeExact();
+    }
+
+    @Benchmark
+    public int httpRequestParser() throws Throwable {
+        in.reset();
+        if (!(boolean) READ_FROM.invokeExact(parser, (InputStream) in))
+            throw new IllegalStateException("incomplete request");
+        String path = (String) TARGET.invokeExact(parser);
+        int result = path.length() + lengthOf((String) HEADER.invokeExact(parser, "Connection"))
+                + lengthOf((String) HEADER.invokeExact(parser, "Cookie"))
+                + lengthOf((String) HEADER.invokeExact(parser, "If-Modified-Since"));
+        NEXT.invokeExact(parser);
+        return result;
+    }
+
+    /** The parsing HttpRequestParser replaced, as WebServer.handleClient/readHeaders had it. */
+    @Benchmark
+    public int bufferedReaderTreeMap() throws Throwable {
+        in.reset();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line = reader.readLine();
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String headerLine;
+        while ((headerLine = reader.readLine()) != null && !headerLine.isEmpty()) {
+            int colonIndex = headerLine.indexOf(":");
+            if (colonIndex != -1) {
+                String headerName = headerLine.substring(0, colonIndex).trim();
+                String headerValue = headerLine.substring(colonIndex + 1).trim();
+                headers.put(headerName, headerValue);
+            }
+        }
+        String path = line.split(" ")[1];
+        return path.length() + lengthOf(headers.get("Connection")) + lengthOf(headers.get("Cookie"))
+                + lengthOf(headers.get("If-Modified-Since"));
+    }
+
+    private static int lengthOf(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The proxy's response head handling: {@code UpstreamPool.Connection.readResponseHead} reading the
+ * web server's head from a pooled connection, and {@code ProxyServer.extractHeader} looking up
+ * headers in the stored head, which CachedPage does for every header it parses. The connection
+ * reads a canned response from memory, so only the head parsing is measured, not the network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyHeaderBenchmark {
+    private static final MethodHandle NEW_CONNECTION = Targets.constructor("UpstreamPool$Connection",
+            Targets.methodType(void.class, Socket.class, boolean.class),
+            Targets.methodType(Object.class, Socket.class, boolean.class));
+    private static final MethodHandle READ_RESPONSE_HEAD = Targets.virtualMethod("UpstreamPool$Connection",
+            "readResponseHead",
+            Targets.methodType(String.class, int.class),
+            Targets.methodType(String.class, Object.class, int.class));
+    private static final MethodHandle EXTRACT_HEADER = Targets.staticMethod("ProxyServer", "extractHeader",
+            Targets.methodType(String.class, String.class, String.class),
+            Targets.methodType(String.class, String.class, String.class));
+
+    // WebServer가 detail 페이지에 보내는 응답 head
+    static final String HEAD = "HTTP/1.1 200 OK\r\n" +
+            "Content-Type: text/html\r\n" +
+            "Content-Length: 1874\r\n" +
+            "Last-Modified: Tue, 14 May 2024 08:12:31 GMT\r\n" +
+            "Cache-Control: max-age=60, stale-while-revalidate=30\r\n" +
+            "Set-Cookie: UserId=483920175\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Keep-Alive: timeout=5, max=100";
+
+    /** A keep-alive connection on which the web server sends the same head over and over. */
+    @State(Scope.Thread)
+    public static class Upstream {
+        Object connection;
+
+        @Setup
+        public void setup() throws Throwable {
+            byte[] response = (HEAD + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            InputStream in = new InputStream() {
+                private int pos;
+
+                @Override
+                public int read() {
+                    int b = response[pos] & 0xFF;
+                    pos = (pos + 1) % response.length;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    int n = Math.min(len, response.length - pos);
+                    System.arraycopy(response, pos, b, off, n);
+                    pos = (pos + n) % response.length;
+                    return n;
+                }
+            };
+            Socket socket = new Socket() {
+                @Override
+                public InputStream getInputStream() {
+                    return in;
+                }
+
+                @Override
+                public OutputStream getOutputStream() {
+                    return OutputStream.nullOutputStream();
+                }
+            };
+            connection = (Object) NEW_CONNECTION.invokeExact(socket, true);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lookup {
+        // 앞쪽, 중간, 없는 헤더
+        @Param({ "Content-Type", "Cache-Control", "ETag" })
+        public String header;
+    }
+
+    @Benchmark
+    public String readResponseHead(Upstream upstream) throws Throwable {
+        return (String) READ_RESPONSE_HEAD.invokeExact(upstream.connection, 64 * 1024);
+    }
+
+    @Benchmark
+    public String extractHeader(Lookup lookup) throws Throwable {
+        return (String) EXTRACT_HEADER.invokeExact(HEAD, lookup.header);
+    }
+}
@@ -0,0 +1,141 @@
+package benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The per-request steps of {@code WebServer.handleGet} after the headers are parsed: reading the
+ * UserId cookie, the catalog lookups that pick the route (they replaced the old destExit scan),
+ * the detail page as served from the response cache, with and without If-Modified-Since, the
+ * template rendering behind it on a cache miss, and the conditional request check with
+ * If-Modified-Since and with If-None-Match.
+ *
+ * Needs resources/ in the working directory, like the server; run.sh starts from the repository root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestPathBenchmark {
+    private static final String DESTINATION = "DestinationCatalog$Destination";
+
+    private static final MethodHandle GET_USER_COOKIE = Targets.virtualMethod("WebServer", "getUserCookie",
+            Targets.methodType(String.class, Map.class),
+            Targets.methodType(String.class, Object.class, Map.class));
+    private static final MethodHandle SEND_DETAIL = Targets.virtualMethod("WebServer", "sendDetail",
+            Targets.methodType(int.class, OutputStream.class, boolean.class, DESTINATION, String.class, Map.class),
+            Targets.methodType(int.class, Object.class, OutputStream.class, boolean.class, Object.class,
+                    String.class, Map.class));
+    private static final MethodHandle RENDER_DETAIL_PAGE = Targets.virtualMethod("WebServer", "renderDetailPage",
+            Targets.methodType(Targets.type("ResponseCache$Page"), DESTINATION),
+            Targets.methodType(Object.class, Object.class, Object.class));
+    private static final MethodHandle IS_NOT_MODIFIED = Targets.staticMethod("WebServer", "isNotModified",
+            Targets.methodType(boolean.class, Map.class, String.class, long.class),
+            Targets.methodType(boolean.class, Map.class, String.class, long.class));
+    private static final MethodHandle LOAD_CATALOG = Targets.staticMethod("DestinationCatalog", "load",
+            Targets.methodType(Targets.type("DestinationCatalog"), Path.class),
+            Targets.methodType(Object.class, Path.class));
+    private static final MethodHandle TYPES = Targets.virtualMethod("DestinationCatalog", "types",
+            Targets.methodType(Set.class),
+            Targets.methodType(Set.class, Object.class));
+    private static final MethodHandle BY_SLUG = Targets.virtualMethod("DestinationCatalog", "bySlug",
+            Targets.methodType(Targets.type(DESTINATION), String.class),
+            Targets.methodType(Object.class, Object.class, String.class));
+
+    private static final String LAST_MODIFIED = "Tue, 14 May 2024 08:12:31 GMT";
+    private static final long LAST_MODIFIED_SECONDS = 1715674351L;
+    private static final String ETAG = "\"18f7648e2d8-754\"";
+
+    private Object server;
+    private Object catalog;
+    private Object swissAlps;
+    private Map<String, String> headers;
+    private Map<String, String> conditionalHeaders;
+    private Map<String, String> ifModifiedSince;
+    private Map<String, String> ifNoneMatch;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+
+    @State(Scope.Thread)
+    public static class Route {
+        // 카테고리, detail, 없는 경로
+        @Param({ "/mountains", "/Swiss-Alps", "/nowhere" })
+        public String path;
+    }
+
+    @Setup
+    public void setup() throws Throwable {
+        if (!Files.exists(Paths.get("resources/detail.html")))
+            throw new IllegalStateException("run from the repository root (resources/ not found)");
+        // port 0: 아무 포트에나 bind만 하고 accept는 하지 않음
+        server = Targets.type("WebServer").getConstructor(int.class, boolean.class).newInstance(0, true);
+        catalog = (Object) LOAD_CATALOG.invokeExact(Paths.get("resources/destinations.json"));
+        swissAlps = (Object) BY_SLUG.invokeExact(catalog, "Swiss-Alps");
+
+        headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("Host", "localhost:8080");
+        headers.put("Accept", "text/html");
+        headers.put("Cookie", "_ga=GA1.1.1234567890.1700000000; UserId=483920175; theme=dark");
+        conditionalHeaders = new TreeMap<>(headers);
+        conditionalHeaders.put("If-Modified-Since", "Fri, 31 Dec 2100 23:59:59 GMT");
+        ifModifiedSince = new TreeMap<>(headers);
+        ifModifiedSince.put("If-Modified-Since", LAST_MODIFIED);
+        ifNoneMatch = new TreeMap<>(headers);
+        ifNoneMatch.put("If-None-Match", ETAG);
+    }
+
+    @Benchmark
+    public String getUserCookie() throws Throwable {
+        return (String) GET_USER_COOKIE.invokeExact(server, headers);
+    }
+
+    /** handleGet's routing: category by type, otherwise detail by slug. */
+    @Benchmark
+    public Object catalogLookup(Route route) throws Throwable {
+        String path = route.path;
+        Set<?> types = (Set<?>) TYPES.invokeExact(catalog);
+        if (types.contains(path.substring(1)))
+            return path;
+        return (Object) BY_SLUG.invokeExact(catalog, path.split("/")[1]);
+    }
+
+    @Benchmark
+    public int sendDetail() throws Throwable {
+        out.reset();
+        return (int) SEND_DETAIL.invokeExact(server, (OutputStream) out, true, swissAlps, "483920175", headers);
+    }
+
+    @Benchmark
+    public int sendDetailNotModified() throws Throwable {
+        out.reset();
+        return (int) SEND_DETAIL.invokeExact(server, (OutputStream) out, true, swissAlps, "483920175",
+                conditionalHeaders);
+    }
+
+    /** The response cache miss path: template rendering plus the file's Last-Modified. */
+    @Benchmark
+    public Object renderDetailPage() throws Throwable {
+        return (Object) RENDER_DETAIL_PAGE.invokeExact(server, swissAlps);
+    }
+
+    @Benchmark
+    public boolean isNotModified() throws Throwable {
+        return (boolean) IS_NOT_MODIFIED.invokeExact(ifModifiedSince, ETAG, LAST_MODIFIED_SECONDS);
+    }
+
+    @Benchmark
+    public boolean isNotModifiedEtag() throws Throwable {
+        return (boolean) IS_NOT_MODIFIED.invokeExact(ifNoneMatch, ETAG, LAST_MODIFIED_SECONDS);
+    }
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Access to the server classes. They live in the default package, which JMH benchmarks cannot
+ * import, and most of the measured methods are private, so they are reached through method
+ * handles. A static final MethodHandle is a constant to the JIT and its invokeExact is inlined
+ * like a direct call.
+ */
+final class Targets {
+    private Targets() {
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(name + " not on the classpath", e);
+        }
+    }
+
+    /** A static method of {@code owner}, adapted to {@code erased} so callers can use invokeExact. */
+    static MethodHandle staticMethod(String owner, String name, MethodType type, MethodType erased) {
+        try {
+            Class<?> c = type(owner);
+            return MethodHandles.privateLookupIn(c, MethodHandles.lookup()).findStatic(c, name, type).asType(erased);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner + "." + name + type, e);
+        }
+    }
+
+    /** An instance method of {@code owner}; the receiver becomes the first (Object) parameter. */
+    static MethodHandle virtualMethod(String owner, String name, MethodType type, MethodType erased) {
+        try {
+            Class<?> c = type(owner);
+            return MethodHandles.privateLookupIn(c, MethodHandles.lookup()).findVirtual(c, name, type).asType(erased);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner + "." + name + type, e);
+        }
+    }
+
+    /** The no-argument constructor of {@code owner}, returning Object. */
+    static MethodHandle constructor(String owner) {
+        try {
+            Class<?> c = type(owner);
+            return MethodHandles.privateLookupIn(c, MethodHandles.lookup())
+                    .findConstructor(c, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner + ".<init>()", e);
+        }
+    }
+
+    /** A constructor of {@code owner} taking {@code type}'s parameters, adapted to {@code erased}. */
+    static MethodHandle constructor(String owner, MethodType type, MethodType erased) {
+        try {
+            Class<?> c = type(owner);
+            return MethodHandles.privateLookupIn(c, MethodHandles.lookup()).findConstructor(c, type).asType(erased);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner + ".<init>" + type, e);
+        }
+    }
+
+    static MethodType methodType(Class<?> returnType, Object... parameterTypes) {
+        Class<?>[] types = new Class<?>[parameterTypes.length];
+        for (int i = 0; i < types.length; i++) {
+            Object t = parameterTypes[i];
+            types[i] = t instanceof String ? type((String) t) : (Class<?>) t;
+        }
+        return MethodType.methodType(returnType, types);
+    }
+}
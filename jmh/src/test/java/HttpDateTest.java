@@ -0,0 +1,28 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class HttpDateTest {
+    // RFC 9110의 예시 날짜
+    private static final long EXAMPLE = 784111777L;
+
+    @Test
+    void parsesImfFixdate() {
+        assertEquals(EXAMPLE, HttpDate.parse("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDate.format(EXAMPLE * 1000));
+    }
+
+    @Test
+    void rejectsNonDigitInTimeFields() {
+        assertEquals(-1, HttpDate.parse("Sun, 06 Nov 1994 0x:49:37 GMT"));
+        assertEquals(-1, HttpDate.parse("Sun, 06 Nov 1994 08:4x:37 GMT"));
+        assertEquals(-1, HttpDate.parse("Sun, 06 Nov 1994 08:49:3x GMT"));
+    }
+
+    @Test
+    void rejectsMalformedDates() {
+        assertEquals(-1, HttpDate.parse(null));
+        assertEquals(-1, HttpDate.parse("yesterday"));
+        assertEquals(-1, HttpDate.parse("Sun, 06 Nov 1994 24:49:37 GMT"));
+    }
+}